@@ -0,0 +1,197 @@
+package sts_exporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Benchmarks of the text processing done for every card, relic, potion and keyword.
+// Run with: mvn package && java -jar target/benchmarks.jar
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBenchmark {
+    // Card descriptions and their upgrades, in the format of AbstractCard.rawDescription
+    static final String[][] CAPTURED_CARDS = {
+        {"Deal !D! damage.", "Deal !D! damage."},
+        {"Gain !B! Block.", "Gain !B! Block."},
+        {"Deal !D! damage. NL Apply !M! Vulnerable.", "Deal !D! damage. NL Apply !M! Vulnerable."},
+        {"Draw !M! card.", "Draw !M! cards."},
+        {"Gain [R] [R]. NL Exhaust.", "Gain [R] [R] [R]. NL Exhaust."},
+        {"Ethereal. NL Gain !M! Strength.", "Gain !M! Strength."},
+        {"Put a card from your discard pile on top of your draw pile. NL Exhaust.", "Put a card from your discard pile on top of your draw pile."},
+        {"Exhaust all non-Attack cards in your hand. NL Gain !B! Block for each card Exhausted.", "Exhaust all non-Attack cards in your hand. NL Gain !B! Block for each card Exhausted."},
+        {"Unplayable. NL At the end of your turn, lose 1 HP for each card in your hand.", "Unplayable. NL At the end of your turn, lose 1 HP for each card in your hand."},
+        {"Channel !M! Lightning. NL Evoke your next Orb.", "Innate. NL Channel !M! Lightning. NL Evoke your next Orb."},
+        {"Retain. NL Deal !D! damage. NL Enter Wrath.", "Retain. NL Deal !D! damage. NL Enter Wrath. NL Draw 1 card."},
+        {"Whenever you play a card, deal !M! damage to ALL enemies.", "Innate. NL Whenever you play a card, deal !M! damage to ALL enemies."},
+    };
+
+    // Relic and potion descriptions and flavor texts, with FontHelper and GlyphLayout markup
+    static final String[] CAPTURED_RELICS = {
+        "At the start of each combat, gain #b1 #yStrength.",
+        "Whenever you play #b10 Attacks, gain #b1 [E] .",
+        "Upon pickup, raise your Max HP by #b7.",
+        "At the end of your turn, if you have no #yBlock, gain #b6 #yBlock.",
+        "Gain #b1 [E] at the start of each turn. NL You can no longer see enemy #yIntents.",
+        "A [#ff6563]burning[] reminder of the [#87ceeb]fallen[] ones.",
+        "Allows you to #ySmith at #yRest #ySites and remove cards from your deck.",
+        "Whenever you #yExhaust a card, deal #b3 damage to ALL enemies. NL TAB [[escaped] brackets.",
+    };
+
+    static final String[] KEYWORDS = {
+        "block", "vulnerable", "weak", "frail", "exhaust", "ethereal", "innate", "retain", "strength", "dexterity",
+        "channel", "evoke", "lightning", "frost", "dark", "plasma", "wrath", "calm", "divinity", "poison",
+        "unplayable", "intangible", "artifact", "scry", "shiv", "upgrade", "wound", "burn", "dazed", "void",
+    };
+
+    static final String[] SYNTHETIC_WORDS = {
+        "Deal", "!D!", "damage", "Gain", "!B!", "Block", "Apply", "!M!", "Vulnerable", "Weak", "to", "ALL", "enemies",
+        "Draw", "card", "cards", "NL", "Exhaust", "the", "a", "of", "your", "hand", "[R]", "Energy", "each", "turn", ".", ",",
+    };
+
+    @Param({"captured", "synthetic"})
+    public String dataSet;
+
+    String[][] cards;
+    String[] relics;
+    KeywordMatcher keywords;
+    Predicate<String> isColor;
+    Predicate<String> isVariable = key -> key.equals("B") || key.equals("D") || key.equals("M");
+
+    @Setup
+    public void setup() {
+        ArrayList<String> words = new ArrayList<>(Arrays.asList(KEYWORDS));
+        words.add("energy");
+        keywords = new KeywordMatcher(words);
+        isColor = name -> name.equals("RED") || name.equals("GREEN") || name.equals("GOLD");
+        if (dataSet.equals("captured")) {
+            cards = CAPTURED_CARDS;
+            relics = CAPTURED_RELICS;
+        } else {
+            Random random = new Random(12345);
+            ArrayList<String[]> synthetic = new ArrayList<>();
+            for (int i = 0; i < 100; ++i) {
+                String a = syntheticText(random, 10 + random.nextInt(50));
+                String b = mutate(random, a);
+                synthetic.add(new String[]{a, b});
+            }
+            cards = synthetic.toArray(new String[0][]);
+            relics = new String[100];
+            for (int i = 0; i < relics.length; ++i) {
+                relics[i] = syntheticText(random, 10 + random.nextInt(50)).replace("Block", "#yBlock").replace("!M!", "#b3").replace("Vulnerable", "[#ff6563]Vulnerable[]");
+            }
+        }
+    }
+
+    private static String syntheticText(Random random, int length) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            if (i > 0) out.append(' ');
+            out.append(SYNTHETIC_WORDS[random.nextInt(SYNTHETIC_WORDS.length)]);
+        }
+        return out.toString();
+    }
+
+    // Change a few words, like an upgrade does
+    private static String mutate(Random random, String text) {
+        ArrayList<String> words = new ArrayList<>(Arrays.asList(text.split(" ")));
+        int changes = 1 + random.nextInt(3);
+        for (int i = 0; i < changes; ++i) {
+            int pos = random.nextInt(words.size());
+            switch (random.nextInt(3)) {
+                case 0: words.add(pos, SYNTHETIC_WORDS[random.nextInt(SYNTHETIC_WORDS.length)]); break;
+                case 1: if (words.size() > 1) words.remove(pos); break;
+                default: words.set(pos, words.get(pos) + "s"); break;
+            }
+        }
+        return String.join(" ", words);
+    }
+
+    @Benchmark
+    public void combineDescriptionsNormal(Blackhole bh) {
+        for (String[] card : cards) {
+            bh.consume(CardText.combineDescriptions(card[0], card[1], CardText.TextMode.NORMAL_MODE, keywords));
+        }
+    }
+
+    @Benchmark
+    public void combineDescriptionsAllModes(Blackhole bh) {
+        for (String[] card : cards) {
+            bh.consume(CardText.combineDescriptions(card[0], card[1], CardText.TextMode.NORMAL_MODE, keywords));
+            bh.consume(CardText.combineDescriptions(card[0], card[1], CardText.TextMode.WIKI_DATA, keywords));
+            bh.consume(CardText.combineDescriptions(card[0], card[1], CardText.TextMode.WIKI_FORMAT, keywords));
+        }
+    }
+
+    // What CardExportData does: all three modes from a single alignment
+    @Benchmark
+    public void combineDescriptionsShared(Blackhole bh) {
+        for (String[] card : cards) {
+            bh.consume(CardText.combineDescriptionsAllModes(card[0], card[1], keywords));
+        }
+    }
+
+    // Substituting !B!, !D!, !M! and NL in the combined descriptions of all modes
+    @Benchmark
+    public void renderDescriptionTemplates(Blackhole bh) {
+        for (String[] card : cards) {
+            for (String text : CardText.combineDescriptionsAllModes(card[0], card[1], keywords)) {
+                bh.consume(DescriptionTemplate.parse(text, isVariable).render(key -> key.equals("D") ? "6(9)" : "3"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void parseSmartTextHtmlAndPlain(Blackhole bh) {
+        for (String relic : relics) {
+            bh.consume(SmartText.parseSmartText(relic, true, true, true, isColor));
+            bh.consume(SmartText.parseSmartText(relic, true, true, false, isColor));
+        }
+    }
+
+    // What the export does: tokenize once, render all flavors from the tokens
+    @Benchmark
+    public void parseSmartTextAllFlavors(Blackhole bh) {
+        for (String relic : relics) {
+            SmartText text = SmartText.parse(relic, true, true, isColor);
+            bh.consume(text.toHTML());
+            bh.consume(text.toPlain());
+            bh.consume(text.toWiki());
+        }
+    }
+
+    // Scanning descriptions for the keyword usage index
+    @Benchmark
+    public void findKeywords(Blackhole bh) {
+        for (String[] card : cards) {
+            keywords.find(card[0], (start, end, keyword) -> {
+                bh.consume(keyword);
+                return true;
+            });
+        }
+        for (String relic : relics) {
+            keywords.find(relic, (start, end, keyword) -> {
+                bh.consume(keyword);
+                return true;
+            });
+        }
+    }
+}
@@ -1,23 +1,26 @@
 package sts_exporter;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.PixmapIO;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.megacrit.cardcrawl.cards.AbstractCard;
 import com.megacrit.cardcrawl.core.CardCrawlGame;
 import com.megacrit.cardcrawl.core.Settings;
 import com.megacrit.cardcrawl.helpers.CardLibrary;
-import com.megacrit.cardcrawl.helpers.GameDictionary;
 import com.megacrit.cardcrawl.helpers.Hitbox;
 import com.megacrit.cardcrawl.screens.SingleCardViewPopup;
 
+import basemod.BaseMod;
 import basemod.ReflectionHacks;
+import basemod.abstracts.CustomCard;
+import basemod.abstracts.DynamicVariable;
 
 public class CardExportData implements Comparable<CardExportData> {
     public AbstractCard card;
@@ -27,10 +30,13 @@ public class CardExportData implements Comparable<CardExportData> {
     public String rarity;
     public String type;
     public ExportPath image, smallImage;
+    public SpriteAtlas.Sprite smallSprite; // replaces smallImage when exporting sprite sheets
     public String cost, costAndUpgrade;
     public String text, textAndUpgrade, textWikiData, textWikiFormat;
     public int block, damage, magicNumber;
     public ModExportData mod;
+    private String rawDescription;
+    private HashMap<String,Integer> variables;
 
     public CardExportData(ExportHelper export, AbstractCard card) {
         this(export, card, true);
@@ -61,93 +67,247 @@ public class CardExportData implements Comparable<CardExportData> {
         } else {
             this.cost = String.valueOf(card.cost);
         }
-        this.costAndUpgrade = combineUpgrade(cost, upgrade == null ? null : upgrade.cost, TextMode.NORMAL_MODE);
+        this.costAndUpgrade = CardText.combineUpgrade(cost, upgrade == null ? null : upgrade.cost, CardText.TextMode.NORMAL_MODE);
         // description
         this.block = card.isBlockModified ? card.block : card.baseBlock;
         this.damage = card.isDamageModified ? card.damage : card.baseDamage;
         this.magicNumber = card.isMagicNumberModified ? card.magicNumber : card.baseMagicNumber;
-        this.text = card.rawDescription
-                        .replace("!B!", String.valueOf(block))
-                        .replace("!D!", String.valueOf(damage))
-                        .replace("!M!", String.valueOf(magicNumber))
-                        .replace(" NL ", "\n");
+        this.rawDescription = card.rawDescription;
+        this.variables = descriptionVariables(card);
+        // image
+        this.image = export.exportPath(this.mod, "card-images", this.name, ".png");
+        this.smallImage = export.exportPath(this.mod, "small-card-images", this.name, ".png");
+    }
+
+    // Compute the text fields.
+    // This doesn't touch the game objects, so it can be done in parallel for all cards.
+    void prepareText(KeywordMatcher keywords) {
+        this.text = DescriptionTemplate.parse(rawDescription, variables::containsKey)
+                        .render(key -> String.valueOf(variables.get(key)));
         if (upgrade == null) {
             this.textAndUpgrade = this.text;
         } else {
-            this.textAndUpgrade = combineDescriptions(card.rawDescription, upgrade.card.rawDescription, TextMode.NORMAL_MODE)
-                            .replace("!B!", combineUpgrade(String.valueOf(block), String.valueOf(upgrade.block), TextMode.NORMAL_MODE))
-                            .replace("!D!", combineUpgrade(String.valueOf(damage), String.valueOf(upgrade.damage), TextMode.NORMAL_MODE))
-                            .replace("!M!", combineUpgrade(String.valueOf(magicNumber), String.valueOf(upgrade.magicNumber), TextMode.NORMAL_MODE))
-                            .replace(" NL ", "\n");
-            this.textWikiData = combineDescriptions(card.rawDescription, upgrade.card.rawDescription, TextMode.WIKI_DATA)
-                            .replace("!B!", combineUpgrade(String.valueOf(block), String.valueOf(upgrade.block), TextMode.WIKI_DATA))
-                            .replace("!D!", combineUpgrade(String.valueOf(damage), String.valueOf(upgrade.damage), TextMode.WIKI_DATA))
-                            .replace("!M!", combineUpgrade(String.valueOf(magicNumber), String.valueOf(upgrade.magicNumber), TextMode.WIKI_DATA))
-                            .replace(" NL ", "\n");
-            this.textWikiFormat = combineDescriptions(card.rawDescription, upgrade.card.rawDescription, TextMode.WIKI_FORMAT)
-                            .replace("!B!", combineUpgrade(String.valueOf(block), String.valueOf(upgrade.block), TextMode.WIKI_FORMAT))
-                            .replace("!D!", combineUpgrade(String.valueOf(damage), String.valueOf(upgrade.damage), TextMode.WIKI_FORMAT))
-                            .replace("!M!", combineUpgrade(String.valueOf(magicNumber), String.valueOf(upgrade.magicNumber), TextMode.WIKI_FORMAT))
-                            .replace(" NL ", "\n");
+            upgrade.prepareText(keywords);
+            String[] combined = CardText.combineDescriptionsAllModes(rawDescription, upgrade.rawDescription, keywords);
+            this.textAndUpgrade = combinedDescription(combined, CardText.TextMode.NORMAL_MODE);
+            this.textWikiData = combinedDescription(combined, CardText.TextMode.WIKI_DATA);
+            this.textWikiFormat = combinedDescription(combined, CardText.TextMode.WIKI_FORMAT);
         }
-        // image
-        this.image = export.exportPath(this.mod, "card-images", this.name, ".png");
-        this.smallImage = export.exportPath(this.mod, "small-card-images", this.name, ".png");
     }
 
-    public void exportImages() {
-        this.image.mkdir();
-        this.smallImage.mkdir();
-        exportImageToFile();
+    // Values of the !X! variables in the description, including those that mods add through BaseMod
+    private static HashMap<String,Integer> descriptionVariables(AbstractCard card) {
+        HashMap<String,Integer> variables = new HashMap<>();
+        if (BaseMod.cardDynamicVariableMap != null) {
+            for (Map.Entry<String,DynamicVariable> entry : BaseMod.cardDynamicVariableMap.entrySet()) {
+                try {
+                    DynamicVariable var = entry.getValue();
+                    variables.put(entry.getKey(), var.isModified(card) ? var.value(card) : var.baseValue(card));
+                } catch (Exception e) {
+                    Exporter.logger.warn("Failed to get dynamic variable " + entry.getKey() + " of card " + card.cardID, e);
+                }
+            }
+        }
+        variables.put("B", card.isBlockModified ? card.block : card.baseBlock);
+        variables.put("D", card.isDamageModified ? card.damage : card.baseDamage);
+        variables.put("M", card.isMagicNumberModified ? card.magicNumber : card.baseMagicNumber);
+        return variables;
+    }
+
+    private String combinedDescription(String[] combined, CardText.TextMode mode) {
+        return DescriptionTemplate.parse(combined[mode.ordinal()], variables::containsKey).render(key -> {
+            Integer upgraded = upgrade.variables.get(key);
+            return CardText.combineUpgrade(String.valueOf(variables.get(key)), upgraded == null ? null : String.valueOf(upgraded), mode);
+        });
+    }
+
+    public void exportImages(ExportManifest manifest, RenderBatch batch) {
+        RenderCache cache = batch.cache;
+        boolean unchanged = smallSprite == null
+            ? manifest.unchanged(image.relative, renderHash(), image, smallImage)
+            : manifest.unchanged(image.relative, renderHash(), image) && !smallSprite.mustRender();
+        if (!unchanged) {
+            this.image.mkdir();
+            if (smallSprite == null) this.smallImage.mkdir();
+            String key = cache == null ? null : cache.key("card", renderHash(), portrait(), Settings.WIDTH, Settings.HEIGHT);
+            if (key == null || !restoreImages(cache, key)) {
+                batch.add(this, key);
+            }
+        }
         if (upgrade != null) {
-            upgrade.exportImages();
+            upgrade.exportImages(manifest, batch);
         }
     }
 
-    private void exportImageToFile() {
+    // Cards waiting to be rendered together into one frame buffer
+    static class RenderBatch {
+        private final RenderContext context;
+        private final int size;
+        private final RenderCache cache;
+        private final ArrayList<CardExportData> cards = new ArrayList<>();
+        private final ArrayList<String> keys = new ArrayList<>();
+
+        RenderBatch(RenderContext context, int size, RenderCache cache) {
+            this.context = context;
+            this.size = size;
+            this.cache = cache;
+        }
+
+        void add(CardExportData card, String key) {
+            cards.add(card);
+            keys.add(key);
+            if (cards.size() >= size) flush();
+        }
+
+        void flush() {
+            if (cards.size() == 1) {
+                cards.get(0).exportImageToFile(context, cache, keys.get(0));
+            } else if (!cards.isEmpty()) {
+                exportImagesToFiles();
+            }
+            cards.clear();
+            keys.clear();
+        }
+
+        private void exportImagesToFiles() {
+            SingleCardViewPopup scv = CardCrawlGame.cardPopup;
+            // the popup puts every card in the same place
+            cards.get(0).openPopup(scv);
+            Hitbox cardHb = popupHitbox(scv);
+            cards.get(0).closePopup(scv);
+            ArrayList<Consumer<SpriteBatch>> renders = new ArrayList<>();
+            ArrayList<Consumer<Pixmap>> writes = new ArrayList<>();
+            for (int i = 0; i < cards.size(); ++i) {
+                CardExportData card = cards.get(i);
+                String key = keys.get(i);
+                Exporter.logger.info("Rendering card image to " + card.image.absolute);
+                renders.add((SpriteBatch sb) -> {
+                    card.openPopup(scv);
+                    renderPopup(scv, sb);
+                    sb.flush(); // draw before closing the popup, that can dispose the portrait texture
+                    card.closePopup(scv);
+                });
+                writes.add((Pixmap pixmap) -> card.writeImages(context, pixmap, cache, key));
+            }
+            ExportHelper.renderSpriteBatchesToPixmaps(context, cardHb.x-POPUP_LPADDING*Settings.scale, cardHb.y-POPUP_BPADDING*Settings.scale,
+                cardHb.width+(POPUP_LPADDING+POPUP_RPADDING)*Settings.scale, cardHb.height+(POPUP_TPADDING+POPUP_BPADDING)*Settings.scale, 1.0f, renders, writes);
+        }
+    }
+
+    // The portrait image is not part of the renderHash, because the pages don't depend on it
+    private String portrait() {
+        return card instanceof CustomCard ? ((CustomCard)card).textureImg : card.assetUrl;
+    }
+
+    private boolean restoreImages(RenderCache cache, String key) {
+        if (smallSprite == null) {
+            return cache.restore(key, image, smallImage);
+        } else if (cache.restore(key, image)) {
+            Pixmap pixmap = new Pixmap(Gdx.files.local(image.absolute));
+            smallSprite.draw(pixmap);
+            pixmap.dispose();
+            return true;
+        }
+        return false;
+    }
+
+    // Hash of everything that determines how the card is rendered
+    public String renderHash() {
+        return ExportManifest.hash(mod.version, card.getClass().getName(), card.upgraded, name, color, rarity, type, cost, text);
+    }
+
+    public JsonWriter toJson(JsonWriter out, boolean listmod) throws IOException {
+        out.beginObject();
+        out.property("name", name);
+        out.property("color", color);
+        out.property("rarity", rarity);
+        out.property("type", type);
+        out.property("cost", cost);
+        out.property("description", text);
+        out.property("block", block);
+        out.property("damage", damage);
+        out.property("magicNumber", magicNumber);
+        if (listmod) out.property("mod", mod.modName);
+        return out.endObject();
+    }
+
+    // Padding around the card in the popup, to include the mana cost and rarity banner
+    private static final float POPUP_LPADDING = 64.0f;
+    private static final float POPUP_RPADDING = 64.0f;
+    private static final float POPUP_TPADDING = 64.0f;
+    private static final float POPUP_BPADDING = 40.0f;
+
+    private void exportImageToFile(RenderContext context, RenderCache cache, String key) {
         Exporter.logger.info("Rendering card image to " + image.absolute);
         // Use SingleCardViewPopup, to get better image and better fonts.
-        card.isLocked = false;
-        card.isSeen = true;
         SingleCardViewPopup scv = CardCrawlGame.cardPopup;
-        scv.open(card);
-        SingleCardViewPopup.isViewingUpgrade = card.upgraded;
-        SingleCardViewPopup.enableUpgradeToggle = false;
+        openPopup(scv);
         // get hitbox
-        Hitbox cardHb = (Hitbox)ReflectionHacks.getPrivate(CardCrawlGame.cardPopup, SingleCardViewPopup.class, "cardHb");
-        float lpadding = 64.0f * Settings.scale;
-        float rpadding = 64.0f * Settings.scale;
-        float tpadding = 64.0f * Settings.scale;
-        float bpadding = 40.0f * Settings.scale;
+        Hitbox cardHb = popupHitbox(scv);
+        float lpadding = POPUP_LPADDING * Settings.scale;
+        float rpadding = POPUP_RPADDING * Settings.scale;
+        float tpadding = POPUP_TPADDING * Settings.scale;
+        float bpadding = POPUP_BPADDING * Settings.scale;
         // Note: We would like to use a scale=1/Settings.scale, but that doesn't actually work, since fonts are initialized at startup using Settings.scale
         // Note2: y is up instead of down, so use y-bpadding
-        ExportHelper.renderSpriteBatchToPixmap(cardHb.x-lpadding, cardHb.y-bpadding, cardHb.width+lpadding+rpadding, cardHb.height+tpadding+bpadding, 1.0f, (SpriteBatch sb) -> {
-            // We can't just call
-            //CardCrawlGame.cardPopup.render(sb);
-            // because that also draws a UI
-            callPrivate(scv, SingleCardViewPopup.class, "renderCardBack", SpriteBatch.class, sb);
-            callPrivate(scv, SingleCardViewPopup.class, "renderPortrait", SpriteBatch.class, sb);
-            callPrivate(scv, SingleCardViewPopup.class, "renderFrame", SpriteBatch.class, sb);
-            callPrivate(scv, SingleCardViewPopup.class, "renderCardBanner", SpriteBatch.class, sb);
-            callPrivate(scv, SingleCardViewPopup.class, "renderCardTypeText", SpriteBatch.class, sb);
-            if (Settings.lineBreakViaCharacter) {
-                callPrivate(scv, SingleCardViewPopup.class, "renderDescriptionCN", SpriteBatch.class, sb);
-            } else {
-                callPrivate(scv, SingleCardViewPopup.class, "renderDescription", SpriteBatch.class, sb);
-            }
-            callPrivate(scv, SingleCardViewPopup.class, "renderTitle", SpriteBatch.class, sb);
-            callPrivate(scv, SingleCardViewPopup.class, "renderCost", SpriteBatch.class, sb);
+        ExportHelper.renderSpriteBatchToPixmap(context, cardHb.x-lpadding, cardHb.y-bpadding, cardHb.width+lpadding+rpadding, cardHb.height+tpadding+bpadding, 1.0f, (SpriteBatch sb) -> {
+            renderPopup(scv, sb);
         }, (Pixmap pixmap) -> {
-            PixmapIO.writePNG(Gdx.files.local(image.absolute), pixmap);
-            Pixmap smallPixmap = ExportHelper.resizePixmap(pixmap, 231, 298);
-            PixmapIO.writePNG(Gdx.files.local(smallImage.absolute), smallPixmap);
-            smallPixmap.dispose();
+            writeImages(context, pixmap, cache, key);
         });
+        closePopup(scv);
+    }
+
+    private void openPopup(SingleCardViewPopup scv) {
+        card.isLocked = false;
+        card.isSeen = true;
+        scv.open(card);
+        SingleCardViewPopup.isViewingUpgrade = card.upgraded;
+        SingleCardViewPopup.enableUpgradeToggle = false;
+    }
+
+    private void closePopup(SingleCardViewPopup scv) {
         SingleCardViewPopup.enableUpgradeToggle = true;
         scv.close();
     }
 
-    private void exportImageToFileLowResolution(String imageFile) {
+    private static Hitbox popupHitbox(SingleCardViewPopup scv) {
+        return (Hitbox)ReflectionHacks.getPrivate(scv, SingleCardViewPopup.class, "cardHb");
+    }
+
+    private static void renderPopup(SingleCardViewPopup scv, SpriteBatch sb) {
+        // We can't just call
+        //CardCrawlGame.cardPopup.render(sb);
+        // because that also draws a UI
+        callPrivate(scv, SingleCardViewPopup.class, "renderCardBack", SpriteBatch.class, sb);
+        callPrivate(scv, SingleCardViewPopup.class, "renderPortrait", SpriteBatch.class, sb);
+        callPrivate(scv, SingleCardViewPopup.class, "renderFrame", SpriteBatch.class, sb);
+        callPrivate(scv, SingleCardViewPopup.class, "renderCardBanner", SpriteBatch.class, sb);
+        callPrivate(scv, SingleCardViewPopup.class, "renderCardTypeText", SpriteBatch.class, sb);
+        if (Settings.lineBreakViaCharacter) {
+            callPrivate(scv, SingleCardViewPopup.class, "renderDescriptionCN", SpriteBatch.class, sb);
+        } else {
+            callPrivate(scv, SingleCardViewPopup.class, "renderDescription", SpriteBatch.class, sb);
+        }
+        callPrivate(scv, SingleCardViewPopup.class, "renderTitle", SpriteBatch.class, sb);
+        callPrivate(scv, SingleCardViewPopup.class, "renderCost", SpriteBatch.class, sb);
+    }
+
+    // Called from an encoder thread
+    private void writeImages(RenderContext context, Pixmap pixmap, RenderCache cache, String key) {
+        context.writePNG("card", image.absolute, pixmap);
+        if (cache != null) cache.store(key, 0, image);
+        if (smallSprite != null) {
+            smallSprite.draw(pixmap);
+        } else {
+            Pixmap smallPixmap = ExportHelper.resizePixmap(pixmap, 231, 298);
+            context.writePNG("small card", smallImage.absolute, smallPixmap);
+            if (cache != null) cache.store(key, 1, smallImage);
+            smallPixmap.dispose();
+        }
+    }
+
+    private void exportImageToFileLowResolution(RenderContext context, String imageFile) {
         // This is the in-game rendering path
         // Scale and position of the card
         // IMG_WIDTH,IMG_HEIGHT are only for the card border, mana cost and rarity banner is outside that, so add some padding.
@@ -158,7 +318,7 @@ public class CardExportData implements Comparable<CardExportData> {
         card.current_x = width/2;
         card.current_y = height/2;
         // Render card to png file
-        ExportHelper.renderSpriteBatchToPNG(0,0, width,height, iwidth,iheight, imageFile, (SpriteBatch sb) -> {
+        ExportHelper.renderSpriteBatchToPNG(context, 0,0, width,height, iwidth,iheight, "card", imageFile, (SpriteBatch sb) -> {
             card.render(sb,false);
         });
     }
@@ -214,12 +374,6 @@ public class CardExportData implements Comparable<CardExportData> {
         return titleCase.toString();
     }
 
-    enum TextMode {
-        NORMAL_MODE,
-        WIKI_DATA,
-        WIKI_FORMAT,
-    }
-
     public static String rarityName(AbstractCard.CardRarity rarity) {
         return toTitleCase(rarity.toString()); // TODO: localize
     }
@@ -228,189 +382,13 @@ public class CardExportData implements Comparable<CardExportData> {
         return toTitleCase(color.toString()); // TODO: localize
     }
 
-    private static String combineUpgrade(String a, String b, TextMode mode) {
-        if (b == null || b.equals(a)) return a;
-        switch(mode) {
-            default:        return a + "(" + b + ")";
-            case WIKI_DATA: return "[" + a + "|" + b + "]";
-        }
-    }
-
-    private static String combineDescriptions(String a, String b, TextMode mode) {
-        // Combine description with upgrade description
-        if (a.equals(b) && mode == TextMode.NORMAL_MODE) return a;
-        // prepare punctuation, so we count it as separate words
-        a = preprocessText(a, mode);
-        b = preprocessText(b, mode);
-        // Split input into words
-        ArrayList<String> awords = words(a);
-        ArrayList<String> bwords = words(b);
-        // Use the standard sequence alignment algorithm (Needleman–Wunsch)
-        final int INSERT_A = 10;
-        final int INSERT_B = 10;
-        int[][] score = new int[awords.size()+1][bwords.size()+1];
-        for (int ai=0 ; ai <= awords.size() ; ai++) {
-            score[ai][0] = ai * INSERT_A;
-        }
-        for (int bi=0 ; bi <= bwords.size() ; bi++) {
-            score[0][bi] = bi * INSERT_B;
-        }
-        for (int ai=1 ; ai <= awords.size() ; ai++) {
-            for (int bi=1 ; bi <= bwords.size() ; bi++) {
-                score[ai][bi] = Math.min(score[ai-1][bi] + INSERT_A,
-                                Math.min(score[ai][bi-1] + INSERT_B,
-                                        score[ai-1][bi-1] + wordCost(awords.get(ai-1),bwords.get(bi-1),mode)));
-            }
-        }
-        // Now return the optimal alignment, first in reverse order
-        ArrayList<String>    words  = new ArrayList<>();
-        ArrayList<Character> source = new ArrayList<>();
-        int ai=awords.size(), bi=bwords.size();
-        while (ai > 0 && bi > 0) {
-            int acost       = score[ai-1][bi] + INSERT_A;
-            int bcost       = score[ai][bi-1] + INSERT_B;
-            int replacecost = score[ai-1][bi-1] + wordCost(awords.get(ai-1),bwords.get(bi-1),mode);
-            if (bcost <= acost && bcost <= replacecost) {
-                words.add(bwords.get(bi-1));
-                source.add('b');
-                bi--;
-                continue;
-            } else if (acost <= replacecost) {
-                words.add(awords.get(ai-1));
-                source.add('a');
-                ai--;
-            } else {
-                words.add(wordReplacement(awords.get(ai-1),bwords.get(bi-1),mode));
-                source.add('c');
-                ai--; bi--;
-            }
-        }
-        while (bi > 0) {
-            words.add(bwords.get(bi-1));
-            source.add('b');
-            bi--;
-        }
-        while (ai > 0) {
-            words.add(awords.get(ai-1));
-            source.add('a');
-            ai--;
-        }
-        // Now reverse
-        Collections.reverse(words);
-        Collections.reverse(source);
-        // Add parentheses to destinguish the sources
-        // We keep track of which source we are taking words from ('a', 'b', or a combination 'c')
-        char prev = 'c';
-        int astart = 0;
-        StringBuilder out = new StringBuilder();
-        if (mode == TextMode.NORMAL_MODE || mode == TextMode.WIKI_FORMAT) {
-            for (int i = 0 ; i < words.size() ; i++) {
-                if (i > 0) out.append(" ");
-                if (source.get(i) == 'a' && prev != 'a') astart = i;
-                if (source.get(i) != 'b' && prev == 'b') out.append(") ");
-                if (source.get(i) == 'b' && prev != 'b') out.append("(");
-                if (source.get(i) == 'c' && prev == 'a') {
-                    // a deletion not followed by an insertion. For example "Exhaust. (not Exhaust.)".
-                    out.append("(not");
-                    for (int j = astart ; j < i ; j++) {
-                        out.append(" ");
-                        out.append(words.get(j));
-                    }
-                    out.append(")");
-                }
-                prev = source.get(i);
-                // is this a keyword?
-                out.append(formatKeyword(words.get(i), mode));
-            }
-            if (prev == 'b') out.append(")");
-            if (prev == 'a') {
-                out.append(" (not");
-                for (int j = astart ; j < words.size() ; j++) {
-                    out.append(" ");
-                    out.append(words.get(j));
-                }
-                out.append(")");
-            }
-        } else {
-            for (int i = 0 ; i < words.size() ; i++) {
-                if      (source.get(i) == 'c' && prev == 'a') out.append("|] ");
-                else if (source.get(i) == 'c' && prev == 'b') out.append("] ");
-                else if (source.get(i) == 'b' && prev == 'a') out.append("|");
-                else if (source.get(i) == 'b' && prev == 'c') { if (i > 0) out.append("| "); else out.append("|"); }
-                else if (source.get(i) == 'a' && prev == 'c') { if (i > 0) out.append(" ["); else out.append("["); }
-                else if (source.get(i) == 'a' && prev == 'b') out.append("] [");
-                else if (i > 0) out.append(" ");
-                prev = source.get(i);
-                // is this a keyword?
-                out.append(formatKeyword(words.get(i), mode));
-            }
-            if (prev == 'b') out.append("]");
-            if (prev == 'a') out.append("|");
-        }
-        // Join and remove unnecesary spaces
-        if (mode == TextMode.WIKI_DATA) {
-            return out.toString().replace(" .",".").replace(" ,",",").replace(" ]","]").replace("[ ","[").replace(" NL]"," NL ]").replace("[NL ","[ NL ").replace(" NL|"," NL |").replace("|NL ","| NL ");
-        } else {
-            return out.toString().replace(" .",".").replace(" ,",",").replace(" )",")").replace("( ","(").replace(" NL)",") NL ").replace("(NL "," NL (");
-        }
-    }
-
-    private static String preprocessText(String a, TextMode mode) {
-        a = a.replace("."," .").replace(","," ,");
-        if (mode == TextMode.WIKI_DATA) {
-            a = a.replace("[R]","<R>").replace("[G]","<G>").replace("[B]","<B>");
-        } else if(mode == TextMode.WIKI_FORMAT) {
-            final String[] energySymbols = {"[R] [R] [R]","[R] [R]","[R]", "[G] [G] [G]","[G] [G]","[G]", "[B] [B] [B]","[B] [B]","[B]"};
-            for (String e : energySymbols) {
-                a = a.replace(e, (e.length()+1)/4 + " Energy");
-            }
-        }
-        return a;
-    }
-
-    private static final int wordCost(String aw, String bw, TextMode mode) {
-        if (aw.equals(bw)) return 0;
-        if (mode != TextMode.WIKI_DATA && bw.equals(aw + "s")) return 10;
-        return 21;
-    }
-    private static final String wordReplacement(String aw, String bw, TextMode mode) {
-        if (aw.equals(bw)) return aw;
-        if (mode != TextMode.WIKI_DATA && bw.equals(aw + "s")) return aw + "(s)";
-        return aw + " (" + bw + ")";
-    }
-
-    private static final String formatKeyword(String w, TextMode mode) {
-        if (GameDictionary.keywords.containsKey(w.toLowerCase()) || w.toLowerCase().equals("energy")) {
-            // keyword
-            if (mode == TextMode.WIKI_FORMAT) {
-                return "[[" + w + "]]";
-            } else if (mode == TextMode.WIKI_DATA) {
-                return "#" + w;
-            }
-        }
-        return w;
-    }
-
-    private static final ArrayList<String> words(String str) {
-        Scanner scanner = new Scanner(str);
-        ArrayList<String> out = new ArrayList<>();
-        while (scanner.hasNext()) {
-            out.add(scanner.next());
-        }
-        scanner.close();
-        return out;
-    }
-
-    public static ArrayList<CardExportData> exportAllCards(ExportHelper export) {
-        ArrayList<CardExportData> cards = new ArrayList<>();
+    public static void exportAllCards(ExportHelper export) {
         for (AbstractCard.CardColor color : AbstractCard.CardColor.values()) {
             ArrayList<AbstractCard> cardLibrary = CardLibrary.getCardList(CardLibrary.LibraryType.valueOf(color.name()));
             for (AbstractCard c : cardLibrary) {
-                cards.add(new CardExportData(export, c.makeCopy()));
+                new CardExportData(export, c.makeCopy());
             }
         }
-        Collections.sort(cards);
-        return cards;
     }
 
     @Override
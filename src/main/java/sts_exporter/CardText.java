@@ -0,0 +1,355 @@
+package sts_exporter;
+
+import java.util.Arrays;
+
+// Combining card descriptions with their upgrades.
+// The words of both descriptions are aligned, and the changes are written in the syntax of a TextMode,
+// like "Deal 6 (9) damage." or "Deal [6|9] damage."
+class CardText {
+    enum TextMode {
+        NORMAL_MODE,
+        WIKI_DATA,
+        WIKI_FORMAT,
+    }
+
+    static String combineUpgrade(String a, String b, TextMode mode) {
+        if (b == null || b.equals(a)) return a;
+        switch(mode) {
+            default:        return a + "(" + b + ")";
+            case WIKI_DATA: return "[" + a + "|" + b + "]";
+        }
+    }
+
+    static String combineDescriptions(String a, String b, TextMode mode, KeywordMatcher keywords) {
+        // Combine description with upgrade description
+        if (a.equals(b) && mode == TextMode.NORMAL_MODE) return a;
+        Alignment alignment = align(a, b, mode);
+        return format(alignment, mode, keywords);
+    }
+
+    // Combined descriptions in all modes, indexed by TextMode.ordinal().
+    // The words are aligned once, and that alignment is reused for the other modes when they would give the same result.
+    static String[] combineDescriptionsAllModes(String a, String b, KeywordMatcher keywords) {
+        String[] out = new String[TextMode.values().length];
+        Alignment normal = align(a, b, TextMode.NORMAL_MODE);
+        out[TextMode.NORMAL_MODE.ordinal()] = a.equals(b) ? a : format(normal, TextMode.NORMAL_MODE, keywords);
+        // energy symbols are the only difference in the words between modes
+        boolean sameWords = !hasEnergySymbol(a) && !hasEnergySymbol(b);
+        Alignment wikiFormat = sameWords ? normal : align(a, b, TextMode.WIKI_FORMAT);
+        out[TextMode.WIKI_FORMAT.ordinal()] = format(wikiFormat, TextMode.WIKI_FORMAT, keywords);
+        // in WIKI_DATA mode plurals are not special
+        Alignment wikiData = sameWords && !normal.hasPlural ? normal : align(a, b, TextMode.WIKI_DATA);
+        out[TextMode.WIKI_DATA.ordinal()] = format(wikiData, TextMode.WIKI_DATA, keywords);
+        return out;
+    }
+
+    // ----------------------------------------------------------------------------
+    // Alignment
+    // ----------------------------------------------------------------------------
+
+    private static final byte FROM_A = 'a', FROM_B = 'b', FROM_BOTH = 'c';
+    private static final int INSERT_A = 10;
+    private static final int INSERT_B = 10;
+
+    // The optimal alignment of two lists of words
+    private static class Alignment {
+        final String[] awords, bwords;
+        int length;
+        byte[] source; // FROM_A, FROM_B or FROM_BOTH
+        int[] aindex, bindex;
+        boolean hasPlural; // was the plural rule used for any pair of words?
+
+        Alignment(String[] awords, String[] bwords) {
+            this.awords = awords;
+            this.bwords = bwords;
+            int capacity = awords.length + bwords.length;
+            source = new byte[capacity];
+            aindex = new int[capacity];
+            bindex = new int[capacity];
+        }
+
+        String word(int i, TextMode mode) {
+            switch (source[i]) {
+                case FROM_A: return awords[aindex[i]];
+                case FROM_B: return bwords[bindex[i]];
+                default:     return wordReplacement(awords[aindex[i]], bwords[bindex[i]], mode);
+            }
+        }
+    }
+
+    // Score matrix, reused between calls on the same thread
+    private static final ThreadLocal<int[]> scoreBuffer = ThreadLocal.withInitial(() -> new int[1024]);
+
+    private static Alignment align(String a, String b, TextMode mode) {
+        // Split input into words
+        String[] awords = words(preprocessText(a, mode));
+        String[] bwords = words(preprocessText(b, mode));
+        Alignment alignment = new Alignment(awords, bwords);
+        // Use the standard sequence alignment algorithm (Needleman–Wunsch)
+        int rows = awords.length + 1, cols = bwords.length + 1;
+        int[] score = scoreBuffer.get();
+        if (score.length < rows * cols) {
+            score = new int[Math.max(rows * cols, 2 * score.length)];
+            scoreBuffer.set(score);
+        }
+        for (int ai=0 ; ai < rows ; ai++) {
+            score[ai*cols] = ai * INSERT_A;
+        }
+        for (int bi=0 ; bi < cols ; bi++) {
+            score[bi] = bi * INSERT_B;
+        }
+        for (int ai=1 ; ai < rows ; ai++) {
+            String aw = awords[ai-1];
+            for (int bi=1 ; bi < cols ; bi++) {
+                int cost = wordCost(aw, bwords[bi-1], mode);
+                if (cost == PLURAL_COST) alignment.hasPlural = true;
+                score[ai*cols+bi] = Math.min(score[(ai-1)*cols+bi] + INSERT_A,
+                                    Math.min(score[ai*cols+bi-1] + INSERT_B,
+                                             score[(ai-1)*cols+bi-1] + cost));
+            }
+        }
+        // Now find the optimal alignment, in reverse order
+        int n = 0;
+        int ai=awords.length, bi=bwords.length;
+        byte[] source = alignment.source;
+        int[] aindex = alignment.aindex, bindex = alignment.bindex;
+        while (ai > 0 && bi > 0) {
+            int acost       = score[(ai-1)*cols+bi] + INSERT_A;
+            int bcost       = score[ai*cols+bi-1] + INSERT_B;
+            int replacecost = score[(ai-1)*cols+bi-1] + wordCost(awords[ai-1], bwords[bi-1], mode);
+            if (bcost <= acost && bcost <= replacecost) {
+                source[n] = FROM_B; bindex[n++] = --bi;
+            } else if (acost <= replacecost) {
+                source[n] = FROM_A; aindex[n++] = --ai;
+            } else {
+                source[n] = FROM_BOTH; aindex[n] = --ai; bindex[n++] = --bi;
+            }
+        }
+        while (bi > 0) {
+            source[n] = FROM_B; bindex[n++] = --bi;
+        }
+        while (ai > 0) {
+            source[n] = FROM_A; aindex[n++] = --ai;
+        }
+        // Now reverse
+        for (int i = 0, j = n-1 ; i < j ; i++, j--) {
+            byte s = source[i]; source[i] = source[j]; source[j] = s;
+            int x = aindex[i]; aindex[i] = aindex[j]; aindex[j] = x;
+            x = bindex[i]; bindex[i] = bindex[j]; bindex[j] = x;
+        }
+        alignment.length = n;
+        return alignment;
+    }
+
+    // ----------------------------------------------------------------------------
+    // Output
+    // ----------------------------------------------------------------------------
+
+    private static final ThreadLocal<StringBuilder> outBuffer = ThreadLocal.withInitial(StringBuilder::new);
+
+    private static String format(Alignment alignment, TextMode mode, KeywordMatcher keywords) {
+        byte[] source = alignment.source;
+        int length = alignment.length;
+        int[] spans = keywordSpans(alignment, mode, keywords);
+        int keywordEnd = -1; // last word of the current keyword
+        // Add parentheses to destinguish the sources
+        // We keep track of which source we are taking words from ('a', 'b', or a combination 'c')
+        byte prev = FROM_BOTH;
+        int astart = 0;
+        StringBuilder out = outBuffer.get();
+        out.setLength(0);
+        if (mode == TextMode.NORMAL_MODE || mode == TextMode.WIKI_FORMAT) {
+            for (int i = 0 ; i < length ; i++) {
+                if (i > 0) out.append(' ');
+                if (source[i] == FROM_A && prev != FROM_A) astart = i;
+                if (source[i] != FROM_B && prev == FROM_B) out.append(") ");
+                if (source[i] == FROM_B && prev != FROM_B) out.append('(');
+                if (source[i] == FROM_BOTH && prev == FROM_A) {
+                    // a deletion not followed by an insertion. For example "Exhaust. (not Exhaust.)".
+                    out.append("(not");
+                    for (int j = astart ; j < i ; j++) {
+                        out.append(' ');
+                        out.append(alignment.word(j, mode));
+                    }
+                    out.append(')');
+                }
+                prev = source[i];
+                if (spans[i] > 0) {
+                    out.append("[[");
+                    keywordEnd = i + spans[i] - 1;
+                }
+                out.append(alignment.word(i, mode));
+                if (i == keywordEnd) out.append("]]");
+            }
+            if (prev == FROM_B) out.append(')');
+            if (prev == FROM_A) {
+                out.append(" (not");
+                for (int j = astart ; j < length ; j++) {
+                    out.append(' ');
+                    out.append(alignment.word(j, mode));
+                }
+                out.append(')');
+            }
+        } else {
+            for (int i = 0 ; i < length ; i++) {
+                if      (source[i] == FROM_BOTH && prev == FROM_A) out.append("|] ");
+                else if (source[i] == FROM_BOTH && prev == FROM_B) out.append("] ");
+                else if (source[i] == FROM_B && prev == FROM_A) out.append('|');
+                else if (source[i] == FROM_B && prev == FROM_BOTH) { if (i > 0) out.append("| "); else out.append('|'); }
+                else if (source[i] == FROM_A && prev == FROM_BOTH) { if (i > 0) out.append(" ["); else out.append('['); }
+                else if (source[i] == FROM_A && prev == FROM_B) out.append("] [");
+                else if (i > 0) out.append(' ');
+                prev = source[i];
+                if (spans[i] > 0) out.append('#');
+                out.append(alignment.word(i, mode));
+            }
+            if (prev == FROM_B) out.append(']');
+            if (prev == FROM_A) out.append('|');
+        }
+        // Remove unnecesary spaces
+        replace(out, " .", ".");
+        replace(out, " ,", ",");
+        if (mode == TextMode.WIKI_DATA) {
+            replace(out, " ]", "]");
+            replace(out, "[ ", "[");
+            replace(out, " NL]", " NL ]");
+            replace(out, "[NL ", "[ NL ");
+            replace(out, " NL|", " NL |");
+            replace(out, "|NL ", "| NL ");
+        } else {
+            replace(out, " )", ")");
+            replace(out, "( ", "(");
+            replace(out, " NL)", ") NL ");
+            replace(out, "(NL ", " NL (");
+        }
+        return out.toString();
+    }
+
+    // Same as String.replace, but in place
+    private static void replace(StringBuilder sb, String from, String to) {
+        int i = sb.indexOf(from);
+        while (i >= 0) {
+            sb.replace(i, i + from.length(), to);
+            i = sb.indexOf(from, i + to.length());
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // Words
+    // ----------------------------------------------------------------------------
+
+    private static boolean hasEnergySymbol(String a) {
+        return a.contains("[R]") || a.contains("[G]") || a.contains("[B]");
+    }
+
+    private static final String[] energySymbols = {"[R] [R] [R]","[R] [R]","[R]", "[G] [G] [G]","[G] [G]","[G]", "[B] [B] [B]","[B] [B]","[B]"};
+
+    private static CharSequence preprocessText(String a, TextMode mode) {
+        // Note: punctuation is split off into separate words by words()
+        if (mode == TextMode.NORMAL_MODE || !hasEnergySymbol(a)) return a;
+        StringBuilder sb = new StringBuilder(a);
+        if (mode == TextMode.WIKI_DATA) {
+            replace(sb, "[R]", "<R>");
+            replace(sb, "[G]", "<G>");
+            replace(sb, "[B]", "<B>");
+        } else if (mode == TextMode.WIKI_FORMAT) {
+            for (String e : energySymbols) {
+                replace(sb, e, (e.length()+1)/4 + " Energy");
+            }
+        }
+        return sb;
+    }
+
+    private static final int PLURAL_COST = 10;
+
+    private static int wordCost(String aw, String bw, TextMode mode) {
+        if (aw.equals(bw)) return 0;
+        if (mode != TextMode.WIKI_DATA && isPlural(aw, bw)) return PLURAL_COST;
+        return 21;
+    }
+    private static String wordReplacement(String aw, String bw, TextMode mode) {
+        if (aw.equals(bw)) return aw;
+        if (mode != TextMode.WIKI_DATA && isPlural(aw, bw)) return aw + "(s)";
+        return aw + " (" + bw + ")";
+    }
+    // bw == aw + "s"
+    private static boolean isPlural(String aw, String bw) {
+        return bw.length() == aw.length() + 1 && bw.charAt(aw.length()) == 's' && bw.startsWith(aw);
+    }
+
+    private static final ThreadLocal<StringBuilder> keywordBuffer = ThreadLocal.withInitial(StringBuilder::new);
+    private static final ThreadLocal<int[]> wordEndBuffer = ThreadLocal.withInitial(() -> new int[256]);
+
+    // For each word, the number of words in the keyword that starts there, or 0.
+    // The words are joined and scanned in one go, so keywords of multiple words are found as well,
+    // but only those that lie on word boundaries and don't cross into a different source.
+    // In WIKI_DATA mode only single words can be marked with '#'.
+    // When a keyword is rejected, a shorter one that starts at the same word can still be marked.
+    private static int[] keywordSpans(Alignment alignment, TextMode mode, KeywordMatcher keywords) {
+        int length = alignment.length;
+        int[] spans = new int[length];
+        if (mode == TextMode.NORMAL_MODE || length == 0) return spans;
+        StringBuilder text = keywordBuffer.get();
+        text.setLength(0);
+        int[] wordEnd = wordEndBuffer.get();
+        if (wordEnd.length < length) {
+            wordEnd = new int[Math.max(length, 2 * wordEnd.length)];
+            wordEndBuffer.set(wordEnd);
+        }
+        for (int i = 0 ; i < length ; i++) {
+            if (i > 0) text.append(' ');
+            text.append(alignment.word(i, mode));
+            wordEnd[i] = text.length();
+        }
+        int[] ends = wordEnd;
+        keywords.find(text, (start, end, keyword) -> {
+            // words are separated by a single space, so the first word starts right after the end of the previous one
+            int first = Arrays.binarySearch(ends, 0, length, start - 1);
+            first = start == 0 ? 0 : first < 0 ? -1 : first + 1;
+            int last = Arrays.binarySearch(ends, 0, length, end);
+            if (first < 0 || last < 0) return false;
+            if (mode == TextMode.WIKI_DATA && last > first) return false;
+            for (int j = first + 1 ; j <= last ; j++) {
+                if (alignment.source[j] != alignment.source[first]) return false;
+            }
+            spans[first] = last - first + 1;
+            return true;
+        });
+        return spans;
+    }
+
+    private static boolean isPunctuation(char c) {
+        return c == '.' || c == ',';
+    }
+
+    // Split on whitespace, punctuation always starts a new word
+    private static String[] words(CharSequence str) {
+        int count = 0;
+        boolean inWord = false;
+        for (int i = 0 ; i < str.length() ; i++) {
+            char c = str.charAt(i);
+            if (Character.isWhitespace(c)) {
+                inWord = false;
+            } else if (!inWord || isPunctuation(c)) {
+                inWord = true;
+                count++;
+            }
+        }
+        String[] out = new String[count];
+        int n = 0, start = -1;
+        for (int i = 0 ; i < str.length() ; i++) {
+            char c = str.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (start >= 0) out[n++] = str.subSequence(start, i).toString();
+                start = -1;
+            } else if (start < 0) {
+                start = i;
+            } else if (isPunctuation(c)) {
+                out[n++] = str.subSequence(start, i).toString();
+                start = i;
+            }
+        }
+        if (start >= 0) out[n++] = str.subSequence(start, str.length()).toString();
+        return out;
+    }
+}
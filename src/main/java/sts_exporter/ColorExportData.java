@@ -1,6 +1,7 @@
 package sts_exporter;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 
 import com.megacrit.cardcrawl.cards.AbstractCard;
 
@@ -9,7 +10,22 @@ class ColorExportData {
     public String id;
     public String name;
     public ArrayList<CardExportData> cards = new ArrayList<>();
+    public ArrayList<CardExportData> cardsAndUpgrades = new ArrayList<>(); // filled by ExportHelper.combineAndSort
     public ArrayList<RelicExportData> relics = new ArrayList<>();
+    // The cards grouped by rarity and by type, in the order of the enums, only non-empty groups
+    public ArrayList<Group> rarities = new ArrayList<>();
+    public ArrayList<Group> types = new ArrayList<>();
+    private final EnumMap<AbstractCard.CardRarity,Group> rarityIndex = new EnumMap<>(AbstractCard.CardRarity.class);
+    private final EnumMap<AbstractCard.CardType,Group> typeIndex = new EnumMap<>(AbstractCard.CardType.class);
+
+    public static class Group {
+        public final String name;
+        public final ArrayList<CardExportData> cards = new ArrayList<>();
+
+        Group(String name) {
+            this.name = name;
+        }
+    }
 
     public ColorExportData(ExportHelper export, AbstractCard.CardColor color) {
         this.color = color;
@@ -17,10 +33,39 @@ class ColorExportData {
         this.name = Exporter.colorName(color);
     }
 
-    public static ArrayList<ColorExportData> exportAllColors(ExportHelper export) {
-        ArrayList<ColorExportData> colors = new ArrayList<>();
+    // Add a card to this color and to its groups, cards should be added in sorted order
+    void add(CardExportData card) {
+        cards.add(card);
+        rarityIndex.computeIfAbsent(card.card.rarity, r -> new Group(card.rarity)).cards.add(card);
+        typeIndex.computeIfAbsent(card.card.type, t -> new Group(card.type)).cards.add(card);
+    }
+
+    // Call after all cards are added
+    void finishGroups() {
+        rarities.addAll(rarityIndex.values());
+        types.addAll(typeIndex.values());
+    }
+
+    boolean isEmpty() {
+        return cards.isEmpty() && relics.isEmpty();
+    }
+
+    public String renderHash() {
+        StringBuilder hash = new StringBuilder();
+        hash.append(id).append('\n');
+        for (CardExportData x : this.cards) {
+            hash.append(x.mod.id).append(x.renderHash());
+            if (x.upgrade != null) hash.append(x.upgrade.renderHash());
+        }
+        for (RelicExportData x : this.relics) hash.append(x.mod.id).append(x.renderHash());
+        return ExportManifest.hash(hash);
+    }
+
+    // One entry for every color, for looking up the color of an item
+    public static EnumMap<AbstractCard.CardColor,ColorExportData> exportAllColors(ExportHelper export) {
+        EnumMap<AbstractCard.CardColor,ColorExportData> colors = new EnumMap<>(AbstractCard.CardColor.class);
         for (AbstractCard.CardColor color : AbstractCard.CardColor.values()) {
-            colors.add(new ColorExportData(export,color));
+            colors.put(color, new ColorExportData(export,color));
         }
         return colors;
     }
@@ -1,5 +1,6 @@
 package sts_exporter;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -61,12 +62,28 @@ public class CreatureExportData implements Comparable<CreatureExportData> {
         }
     }
 
-    public void exportImages() {
+    public void exportImages(ExportManifest manifest, RenderContext context) {
+        if (manifest.unchanged(image.relative, renderHash(), image)) return;
         this.image.mkdir();
-        exportImageToFile(this.image.absolute);
+        exportImageToFile(context, this.image.absolute);
     }
 
-    private void exportImageToFile(String imageFile) {
+    public String renderHash() {
+        return ExportManifest.hash(mod.version, creature.getClass().getName(), name, type, minHP, maxHP, cardColor);
+    }
+
+    public JsonWriter toJson(JsonWriter out, boolean listmod) throws IOException {
+        out.beginObject();
+        out.property("name", name);
+        out.property("type", type);
+        // strings, like in the items.json written by older versions
+        out.property("minHP", String.valueOf(minHP));
+        out.property("maxHP", String.valueOf(maxHP));
+        if (listmod) out.property("mod", mod.modName);
+        return out.endObject();
+    }
+
+    private void exportImageToFile(RenderContext context, String imageFile) {
         Exporter.logger.info("Rendering creature image to " + imageFile);
         // disable animation during rendering
         float dt = Gdx.graphics.getDeltaTime();
@@ -95,7 +112,7 @@ public class CreatureExportData implements Comparable<CreatureExportData> {
             height = size.y;
         }
         // Render to a png
-        ExportHelper.renderSpriteBatchToPNG(x,y, width,height, scale, imageFile, (SpriteBatch sb) -> {
+        ExportHelper.renderSpriteBatchToPNG(context, x,y, width,height, scale, "creature", imageFile, (SpriteBatch sb) -> {
             // use AbstractCreature.render()
             // Note: the normal render code uses a PolygonSpriteBatch CardCrawlGame.psb, so make sure the projection is the same
             Matrix4 oldProjection = CardCrawlGame.psb.getProjectionMatrix();
@@ -126,13 +143,10 @@ public class CreatureExportData implements Comparable<CreatureExportData> {
         }
     }
 
-    public static ArrayList<CreatureExportData> exportAllCreatures(ExportHelper export) {
-        ArrayList<CreatureExportData> creatures = new ArrayList<>();
+    public static void exportAllCreatures(ExportHelper export) {
         for (AbstractCreature m : getAllCreatures()) {
-            creatures.add(new CreatureExportData(export, m));
+            new CreatureExportData(export, m);
         }
-        Collections.sort(creatures);
-        return creatures;
     }
 
     public static ArrayList<AbstractCreature> getAllCreatures() {
@@ -0,0 +1,89 @@
+package sts_exporter;
+
+import java.util.ArrayList;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// A card description, split into literal text, "!X!" variables and " NL " line breaks.
+// Parsing is done once, after that the description can be rendered with different values in a single pass.
+class DescriptionTemplate {
+    private static final String NEWLINE = " NL ";
+    private static final byte LITERAL = 0, VARIABLE = 1, LINE_BREAK = 2;
+
+    private final String[] parts; // literal text or variable name
+    private final byte[] kinds;
+    private final int length; // length of the literal parts
+
+    private DescriptionTemplate(String[] parts, byte[] kinds, int length) {
+        this.parts = parts;
+        this.kinds = kinds;
+        this.length = length;
+    }
+
+    // @param isVariable which names between exclamation marks are variables, anything else is left alone
+    static DescriptionTemplate parse(String text, Predicate<String> isVariable) {
+        ArrayList<String> parts = new ArrayList<>();
+        ArrayList<Byte> kinds = new ArrayList<>();
+        int literalStart = 0, length = 0;
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int end = -1;
+            byte kind = LITERAL;
+            String part = null;
+            if (c == ' ' && text.startsWith(NEWLINE, i)) {
+                end = i + NEWLINE.length();
+                kind = LINE_BREAK;
+            } else if (c == '!') {
+                int close = text.indexOf('!', i + 1);
+                if (close > i + 1 && isVariable.test(part = text.substring(i + 1, close))) {
+                    end = close + 1;
+                    kind = VARIABLE;
+                }
+            }
+            if (end < 0) {
+                i++;
+                continue;
+            }
+            if (literalStart < i) {
+                parts.add(text.substring(literalStart, i));
+                kinds.add(LITERAL);
+                length += i - literalStart;
+            }
+            parts.add(part);
+            kinds.add(kind);
+            i = literalStart = end;
+        }
+        if (literalStart < text.length()) {
+            parts.add(text.substring(literalStart));
+            kinds.add(LITERAL);
+            length += text.length() - literalStart;
+        }
+        byte[] kindArray = new byte[kinds.size()];
+        for (int j = 0; j < kindArray.length; ++j) kindArray[j] = kinds.get(j);
+        return new DescriptionTemplate(parts.toArray(new String[parts.size()]), kindArray, length);
+    }
+
+    // Render with the given variable values, variables without a value are kept as "!X!"
+    String render(Function<String,String> values) {
+        StringBuilder out = new StringBuilder(length + 8 * parts.length);
+        for (int i = 0; i < parts.length; ++i) {
+            switch (kinds[i]) {
+                case LITERAL:
+                    out.append(parts[i]);
+                    break;
+                case LINE_BREAK:
+                    out.append('\n');
+                    break;
+                default:
+                    String value = values.apply(parts[i]);
+                    if (value == null) {
+                        out.append('!').append(parts[i]).append('!');
+                    } else {
+                        out.append(value);
+                    }
+            }
+        }
+        return out.toString();
+    }
+}
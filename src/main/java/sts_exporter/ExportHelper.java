@@ -1,32 +1,49 @@
 package sts_exporter;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.Deflater;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.PixmapIO;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.glutils.FrameBuffer;
-import com.badlogic.gdx.math.Matrix4;
-import com.badlogic.gdx.utils.ScreenUtils;
 import com.evacipated.cardcrawl.modthespire.Loader;
 import com.evacipated.cardcrawl.modthespire.ModInfo;
 import com.evacipated.cardcrawl.modthespire.lib.SpireConfig;
 import com.megacrit.cardcrawl.cards.AbstractCard.CardColor;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.jtwig.JtwigModel;
 import org.jtwig.JtwigTemplate;
+import org.jtwig.environment.Environment;
 import org.jtwig.environment.EnvironmentConfiguration;
 import org.jtwig.environment.EnvironmentConfigurationBuilder;
+import org.jtwig.resource.reference.ResourceReference;
 
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -37,6 +54,14 @@ class ExportHelper {
         this.dir = config.getString(Exporter.CONFIG_EXPORT_DIR);
         this.include_basegame = config.getBool(Exporter.CONFIG_INCLUDE_BASE_GAME);
         this.render_images = config.getBool(Exporter.CONFIG_RENDER_IMAGES);
+        this.incremental = config.getBool(Exporter.CONFIG_INCREMENTAL);
+        this.ndjson = config.getBool(Exporter.CONFIG_NDJSON);
+        this.binary_snapshot = config.getBool(Exporter.CONFIG_BINARY_SNAPSHOT);
+        this.sprite_atlas = config.getBool(Exporter.CONFIG_SPRITE_ATLAS);
+        this.render_cache_dir = config.getString(Exporter.CONFIG_RENDER_CACHE_DIR);
+        this.card_render_batch = Math.max(1, config.getInt(Exporter.CONFIG_CARD_RENDER_BATCH));
+        this.worker_threads = Math.max(1, config.getInt(Exporter.CONFIG_WORKER_THREADS));
+        this.png_compression = pngCompressionLevel(config.getString(Exporter.CONFIG_PNG_COMPRESSION));
     }
 
     // ----------------------------------------------------------------------------
@@ -47,81 +72,321 @@ class ExportHelper {
     String dir;
     boolean include_basegame;
     boolean render_images;
+    boolean incremental;
+    boolean ndjson;
+    boolean binary_snapshot;
+    boolean sprite_atlas;
+    String render_cache_dir;
+    int card_render_batch;
+    int worker_threads;
+    int png_compression;
+    ExportManifest manifest;
+    ExportMetrics metrics = new ExportMetrics();
+    RenderCache renderCache; // null if there is no cache directory
+
+    // "fast" for quick previews, "max" for the smallest files, or a deflate level from 0 to 9
+    private static int pngCompressionLevel(String setting) {
+        if (setting == null || setting.equals("default")) return Deflater.DEFAULT_COMPRESSION;
+        if (setting.equals("fast")) return Deflater.BEST_SPEED;
+        if (setting.equals("max")) return Deflater.BEST_COMPRESSION;
+        try {
+            int level = Integer.parseInt(setting);
+            if (level >= 0 && level <= 9) return level;
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        Exporter.logger.warn("Unknown png compression setting: " + setting);
+        return Deflater.DEFAULT_COMPRESSION;
+    }
 
     // Collect all items
     void collectAll() {
-        initModList();
-        // collect items
+        metrics.time("initModList", this::initModList);
+        // collect items, they add themselves to their mod, and are sorted by combineAndSort
         Exporter.logger.info("Collecting items");
-        CardExportData.exportAllCards(this);
-        RelicExportData.exportAllRelics(this);
-        CreatureExportData.exportAllCreatures(this);
-        PotionExportData.exportAllPotions(this);
-        this.colors = ColorExportData.exportAllColors(this);
-        this.keywords = KeywordExportData.exportAllKeywords(this);
-        // collect only from included mods
+        metrics.time("exportAllCards", () -> CardExportData.exportAllCards(this));
+        metrics.time("exportAllRelics", () -> RelicExportData.exportAllRelics(this));
+        metrics.time("exportAllCreatures", () -> CreatureExportData.exportAllCreatures(this));
+        metrics.time("exportAllPotions", () -> PotionExportData.exportAllPotions(this));
+        this.colorIndex = metrics.time("exportAllColors", () -> ColorExportData.exportAllColors(this));
+        this.keywords = metrics.time("exportAllKeywords", () -> KeywordExportData.exportAllKeywords(this));
+        metrics.time("keywordMatcher", this::buildKeywordMatcher);
+        metrics.time("prepareText", this::prepareText);
+        metrics.time("sort", this::combineAndSort);
+        metrics.time("keywordUsage", this::indexKeywordUsage);
+        if (sprite_atlas) {
+            metrics.time("layoutSprites", this::layoutSprites);
+        }
+    }
+
+    // Positions of the small images in the sprite sheets of each mod.
+    // Cards are followed by their upgrades, in the same order as the pages show them.
+    private void layoutSprites() {
+        for (ModExportData mod : this.mods) {
+            if (!modIncludedInExport(mod)) continue;
+            SpriteAtlas cardAtlas = new SpriteAtlas(this, mod, "small-cards", 231, 298, 8, 6);
+            for (CardExportData x : mod.cards) {
+                x.smallSprite = cardAtlas.add(x.smallImage.relativeToMod, x.renderHash());
+                if (x.upgrade != null) x.upgrade.smallSprite = cardAtlas.add(x.upgrade.smallImage.relativeToMod, x.upgrade.renderHash());
+            }
+            SpriteAtlas relicAtlas = new SpriteAtlas(this, mod, "relics", 128, 128, 16, 16);
+            for (RelicExportData x : mod.relics) {
+                x.sprite = relicAtlas.add(x.image.relativeToMod, x.renderHash());
+            }
+            SpriteAtlas potionAtlas = new SpriteAtlas(this, mod, "potions", 64, 64, 16, 16);
+            for (PotionExportData x : mod.potions) {
+                x.sprite = potionAtlas.add(x.image.relativeToMod, x.renderHash());
+            }
+            mod.atlases.add(cardAtlas);
+            mod.atlases.add(relicAtlas);
+            mod.atlases.add(potionAtlas);
+        }
+    }
+
+    // All keywords and their aliases, so texts can be scanned for them in one pass
+    private void buildKeywordMatcher() {
+        ArrayList<String> words = new ArrayList<>();
+        for (KeywordExportData keyword : this.keywords) {
+            words.add(keyword.name);
+            keywordOfMatch.add(keyword);
+            for (String alias : keyword.names) {
+                words.add(alias);
+                keywordOfMatch.add(keyword);
+            }
+        }
+        // energy symbols become "Energy" in the wiki, which is linked like a keyword
+        words.add("energy");
+        keywordOfMatch.add(null);
+        this.keywordMatcher = new KeywordMatcher(words);
+    }
+
+    // Which cards, relics and potions mention each keyword.
+    // The items are visited in sorted order, so the lists are sorted as well.
+    private void indexKeywordUsage() {
+        for (CardExportData c : this.cards) {
+            findKeywords(c.text, c, k -> k.cards);
+            if (c.upgrade != null) findKeywords(c.upgrade.text, c, k -> k.cards);
+        }
+        for (RelicExportData r : this.relics) {
+            findKeywords(r.descriptionPlain, r, k -> k.relics);
+        }
+        for (PotionExportData p : this.potions) {
+            findKeywords(p.descriptionPlain, p, k -> k.potions);
+        }
+    }
+
+    private <T> void findKeywords(String text, T item, Function<KeywordExportData,ArrayList<T>> usage) {
+        if (text == null) return;
+        keywordMatcher.find(text, (start, end, match) -> {
+            KeywordExportData keyword = keywordOfMatch.get(match);
+            if (keyword == null) return true;
+            ArrayList<T> items = usage.apply(keyword);
+            // an item can mention a keyword more than once
+            if (items.isEmpty() || items.get(items.size() - 1) != item) items.add(item);
+            return true;
+        });
+    }
+
+    // The item constructors only take a snapshot of the game objects, and attribute them to a mod.
+    // The text derived from that doesn't need the game, so it is computed in parallel afterwards.
+    private void prepareText() {
+        ArrayList<Runnable> tasks = new ArrayList<>();
+        for (ModExportData mod : this.mods) {
+            if (modIncludedInExport(mod)) {
+                for (CardExportData x : mod.cards) tasks.add(() -> x.prepareText(keywordMatcher));
+                for (RelicExportData x : mod.relics) tasks.add(x::prepareText);
+                for (PotionExportData x : mod.potions) tasks.add(x::prepareText);
+            }
+        }
+        // keywords are shown for all mods
+        for (KeywordExportData x : this.keywords) tasks.add(x::prepareText);
+        ForkJoinPool pool = new ForkJoinPool(worker_threads);
+        try {
+            pool.submit(() -> tasks.parallelStream().forEach(Runnable::run)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Error while preparing text", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Items are sorted once, for all included mods together.
+    // The per mod and per color lists are filtered from the sorted lists, so they are in the same order without sorting them again.
+    private void combineAndSort() {
         for (ModExportData mod : this.mods) {
             if (modIncludedInExport(mod)) {
                 cards.addAll(mod.cards);
                 relics.addAll(mod.relics);
                 creatures.addAll(mod.creatures);
                 potions.addAll(mod.potions);
-                // sort
-                Collections.sort(mod.cards);
-                Collections.sort(mod.relics);
-                Collections.sort(mod.creatures);
-                Collections.sort(mod.potions);
+                mod.cards.clear();
+                mod.relics.clear();
+                mod.creatures.clear();
+                mod.potions.clear();
             }
         }
         Collections.sort(this.cards);
         Collections.sort(this.relics);
         Collections.sort(this.creatures);
         Collections.sort(this.potions);
-        // per color items
+        // per mod items
+        for (CardExportData c : this.cards) c.mod.cards.add(c);
+        for (RelicExportData r : this.relics) r.mod.relics.add(r);
+        for (CreatureExportData c : this.creatures) c.mod.creatures.add(c);
+        for (PotionExportData p : this.potions) p.mod.potions.add(p);
+        // cards followed by upgrades, the upgrades are then sorted into place
+        cardsAndUpgrades.addAll(this.cards);
         for (CardExportData c : this.cards) {
-            findColor(c.card.color).cards.add(c);
+            if (c.upgrade != null) cardsAndUpgrades.add(c.upgrade);
+        }
+        Collections.sort(cardsAndUpgrades); // both parts are already sorted, so this is a merge
+        for (CardExportData c : cardsAndUpgrades) {
+            c.mod.cardsAndUpgrades.add(c);
+            findColor(c.card.color).cardsAndUpgrades.add(c);
+        }
+        // per color items, in a single pass over the sorted lists, so the groups are sorted as well
+        for (CardExportData c : this.cards) {
+            findColor(c.card.color).add(c);
         }
         for (RelicExportData r : this.relics) {
             if (r.poolColor != null) findColor(r.poolColor).relics.add(r);
         }
+        // only colors that have items get pages
+        for (ColorExportData color : colorIndex.values()) {
+            color.finishGroups();
+            if (!color.isEmpty()) colors.add(color);
+        }
     }
 
     // Export all collected items
     void exportAll() {
-        exportAllTemplates();
+        // the pages are different with sprite sheets, so switching that setting invalidates everything
+        String version = exporterVersion() + (sprite_atlas ? "-atlas" : "");
+        manifest = new ExportManifest(dir + "/export-manifest.txt", version, incremental);
+        metrics.time("templates", this::exportAllTemplates);
         if (render_images) {
-            exportAllImages();
+            metrics.time("images", this::exportAllImages);
         }
+        manifest.save();
+        metrics.write(dir + "/export-metrics.json", mods);
     }
 
     void exportAllImages() {
-        for (ModExportData mod : mods) {
-            if (modIncludedInExport(mod)) {
-                mod.exportImages();
+        long start = System.nanoTime();
+        RenderContext renderContext = new RenderContext(worker_threads, png_compression, metrics.imageStats, metrics.renderStats, manifest);
+        if (render_cache_dir != null && !render_cache_dir.isEmpty()) {
+            renderCache = new RenderCache(render_cache_dir, exporterVersion());
+        }
+        try {
+            for (ModExportData mod : mods) {
+                for (SpriteAtlas atlas : mod.atlases) atlas.checkManifest(manifest);
             }
+            for (ModExportData mod : mods) {
+                if (modIncludedInExport(mod)) {
+                    mod.exportImages(this, renderContext);
+                }
+            }
+        } finally {
+            renderContext.dispose();
+            for (ModExportData mod : mods) {
+                for (SpriteAtlas atlas : mod.atlases) atlas.finish();
+            }
+        }
+        logImageStats();
+        if (renderCache != null) {
+            Exporter.logger.info("Render cache: " + renderCache.getHits() + " items reused, " + renderCache.getMisses() + " rendered");
         }
+        Exporter.logger.info("Rendered images in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private void logImageStats() {
+        for (Map.Entry<String,ExportStats.Entry> entry : metrics.imageStats.entries().entrySet()) {
+            ExportStats.Entry stats = entry.getValue();
+            Exporter.logger.info(String.format("Images %s: %d written, %d KB, %d ms encoding",
+                entry.getKey(), stats.getCount(), stats.getBytes() / 1024, stats.getMillis()));
+        }
+    }
+
+    // Version of the exporter itself, a new version might render things differently
+    private String exporterVersion() {
+        ModExportData self = findMod(ExportHelper.class);
+        long modified = 0;
+        try {
+            modified = new File(self.url.toURI()).lastModified();
+        } catch (Exception e) {
+            // the version will have to do
+        }
+        return self.version + "-" + modified;
     }
 
     private static final String[] colorTemplates = {"cards.html","cards.md","cards.wiki","wiki-card-data.txt","style.css"};
     private static final String[] indexTemplates = {"index.html","wiki-card-data.txt"};
-    private static final String[] commonTemplates = {"creatures.html","keywords.html","potions.html","relics.html","cards.html","creatures.md","keywords.md","potions.md","relics.md","cards.md","items.json","style.css"};
+    private static final String[] commonTemplates = {"creatures.html","keywords.html","potions.html","relics.html","cards.html","creatures.md","keywords.md","potions.md","relics.md","cards.md","style.css"};
     private static final String[] modTemplates = {"index.html","index.md"};
 
     void exportAllTemplates() {
-        for (ModExportData mod : mods) {
-            if (modIncludedInExport(mod)) {
-                JtwigModel model = getTwigModel(mod);
-                writeTwigTemplates(model, "templates/mods", exportDir(mod), modTemplates);
-                writeTwigTemplates(model, "templates", exportDir(mod), commonTemplates);
+        // Templates don't use the GL context, so they can be rendered in parallel.
+        // The models are built here, rendering and writing happens in the worker threads.
+        ExecutorService pool = Executors.newFixedThreadPool(worker_threads);
+        ArrayList<Future<?>> pending = new ArrayList<>();
+        try {
+            for (ModExportData mod : mods) {
+                if (modIncludedInExport(mod)) {
+                    JtwigModel model = getTwigModel(mod);
+                    String hash = mod.renderHash();
+                    writeTwigTemplates(pool, pending, model, hash, "templates/mods", exportDir(mod), modTemplates);
+                    writeTwigTemplates(pool, pending, model, hash, "templates", exportDir(mod), commonTemplates);
+                    writeJson(pool, pending, hash, exportDir(mod) + "/items.json", true, out ->
+                        writeItems(out, mod, mod.cardsAndUpgrades, mod.relics, mod.potions, mod.creatures, mod.keywords, false));
+                    if (!mod.atlases.isEmpty()) {
+                        writeJson(pool, pending, hash, exportDir(mod) + "/atlas.json", true, out -> {
+                            out.beginArray();
+                            for (SpriteAtlas atlas : mod.atlases) atlas.toJson(out);
+                            out.endArray();
+                        });
+                    }
+                }
+            }
+            for (ColorExportData color : colors) {
+                JtwigModel model = getTwigModel(color);
+                writeTwigTemplates(pool, pending, model, color.renderHash(), "templates", exportDir(color), colorTemplates);
+            }
+            JtwigModel model = getTwigModelAll();
+            String hash = renderHashAll();
+            writeTwigTemplates(pool, pending, model, hash, "templates", dir, indexTemplates);
+            writeTwigTemplates(pool, pending, model, hash, "templates", dir, commonTemplates);
+            writeJson(pool, pending, hash, dir + "/items.json", true, out ->
+                writeItems(out, null, this.cardsAndUpgrades, this.relics, this.potions, this.creatures, this.keywords, true));
+            if (ndjson) {
+                // one item per line, for consumers that want to stream the items
+                writeJson(pool, pending, hash, dir + "/cards.ndjson", false, out -> { for (CardExportData x : this.cardsAndUpgrades) x.toJson(out, true).endLine(); });
+                writeJson(pool, pending, hash, dir + "/relics.ndjson", false, out -> { for (RelicExportData x : this.relics) x.toJson(out, true).endLine(); });
+                writeJson(pool, pending, hash, dir + "/potions.ndjson", false, out -> { for (PotionExportData x : this.potions) x.toJson(out, true).endLine(); });
+                writeJson(pool, pending, hash, dir + "/creatures.ndjson", false, out -> { for (CreatureExportData x : this.creatures) x.toJson(out, true).endLine(); });
+                writeJson(pool, pending, hash, dir + "/keywords.ndjson", false, out -> { for (KeywordExportData x : this.keywords) x.toJson(out, true).endLine(); });
             }
+            if (binary_snapshot) {
+                writeFile(pool, pending, hash, dir + "/items.snapshot", stream ->
+                    new SnapshotWriter(mods, this.cards, this.relics, this.potions, this.creatures, this.keywords).write(stream));
+            }
+            for (Future<?> task : pending) {
+                task.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Error while writing templates", e);
+        } finally {
+            pool.shutdown();
         }
-        for (ColorExportData color : colors) {
-            JtwigModel model = getTwigModel(color);
-            writeTwigTemplates(model, "templates", exportDir(color), colorTemplates);
+        logTemplateStats();
+    }
+
+    private String renderHashAll() {
+        StringBuilder hash = new StringBuilder();
+        for (ModExportData mod : mods) {
+            if (modIncludedInExport(mod)) hash.append(mod.renderHash());
         }
-        JtwigModel model = getTwigModelAll();
-        writeTwigTemplates(model, "templates", dir, indexTemplates);
-        writeTwigTemplates(model, "templates", dir, commonTemplates);
+        for (KeywordExportData x : this.keywords) hash.append(x.mod.id).append(x.renderHash());
+        return ExportManifest.hash(hash);
     }
 
     String exportDir(ModExportData mod) {
@@ -154,17 +419,38 @@ class ExportHelper {
     private ArrayList<ModExportData> mods = new ArrayList<>();
     // Combined items
     public ArrayList<CardExportData> cards = new ArrayList<>();
+    public ArrayList<CardExportData> cardsAndUpgrades = new ArrayList<>();
     public ArrayList<RelicExportData> relics = new ArrayList<>();
     public ArrayList<CreatureExportData> creatures = new ArrayList<>();
     public ArrayList<PotionExportData> potions = new ArrayList<>();
-    public ArrayList<ColorExportData> colors = new ArrayList<>();
+    public ArrayList<ColorExportData> colors = new ArrayList<>(); // only colors with items
+    private EnumMap<CardColor,ColorExportData> colorIndex;
     public ArrayList<KeywordExportData> keywords = new ArrayList<>();
+    KeywordMatcher keywordMatcher;
+    private ArrayList<KeywordExportData> keywordOfMatch = new ArrayList<>(); // for each word in keywordMatcher, null if it is not a keyword
+
+    // Lookup caches for findMod, every item needs to be attributed to a mod.
+    // Locations are compared as strings, because URL.equals can do DNS lookups.
+    private HashMap<String,ModExportData> modsByLocation = new HashMap<>();
+    private ConcurrentHashMap<Class<?>,ModExportData> modsByClass = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String,ModExportData> modsByClassName = new ConcurrentHashMap<>();
 
     private void initModList() {
         mods.add(new ModExportData(this));
         for (ModInfo modInfo : Loader.MODINFOS) {
             mods.add(new ModExportData(this, modInfo));
         }
+        for (ModExportData mod : mods) {
+            if (mod.url != null) modsByLocation.putIfAbsent(locationKey(mod.url), mod);
+        }
+    }
+
+    private static String locationKey(URL url) {
+        try {
+            return url.toURI().normalize().toString();
+        } catch (URISyntaxException e) {
+            return url.toExternalForm();
+        }
     }
 
     public ModExportData findMod(Class<?> cls) {
@@ -172,17 +458,23 @@ class ExportHelper {
         if (cls == null) {
             return mods.get(0);
         }
-        URL locationURL = cls.getProtectionDomain().getCodeSource().getLocation();
-        if (locationURL == null) {
-            return findMod(cls.getName());
-        } else {
-            return findMod(locationURL);
-        }
+        return modsByClass.computeIfAbsent(cls, c -> {
+            CodeSource source = c.getProtectionDomain().getCodeSource();
+            URL locationURL = source == null ? null : source.getLocation();
+            if (locationURL == null) {
+                return findMod(c.getName());
+            } else {
+                return findMod(locationURL);
+            }
+        });
     }
     public ModExportData findMod(String clsName) {
         if (clsName == null) {
             return mods.get(0);
         }
+        return modsByClassName.computeIfAbsent(clsName, this::findModUncached);
+    }
+    private ModExportData findModUncached(String clsName) {
         try {
             ClassPool pool = Loader.getClassPool();
             CtClass ctCls = pool.get(clsName);
@@ -200,12 +492,8 @@ class ExportHelper {
         if (locationURL == null) {
             return mods.get(0);
         }
-        for (ModExportData mod : mods) {
-            if (locationURL.equals(mod.url)) {
-                return mod;
-            }
-        }
-        return mods.get(0);
+        ModExportData mod = modsByLocation.get(locationKey(locationURL));
+        return mod != null ? mod : mods.get(0);
     }
 
     public boolean modIncludedInExport(ModExportData mod) {
@@ -217,72 +505,36 @@ class ExportHelper {
     }
 
     public ColorExportData findColor(CardColor color) {
-        for (ColorExportData c : this.colors) {
-            if (c.color == color) return c;
-        }
-        return null;
-    }
-
-    private static ArrayList<CardExportData> withUpgrades(ArrayList<CardExportData> cards) {
-        ArrayList<CardExportData> all = new ArrayList<>();
-        all.addAll(cards);
-        for (CardExportData card : cards) {
-            if (card.upgrade != null) all.add(card.upgrade);
-        }
-        Collections.sort(all);
-        return all;
+        return colorIndex.get(color);
     }
 
     // ----------------------------------------------------------------------------
     // Image exporting
     // ----------------------------------------------------------------------------
 
-    public static void renderSpriteBatchToPNG(float x, float y, float width, float height, float scale, String imageFile, Consumer<SpriteBatch> render) {
-        renderSpriteBatchToPNG(x,y,width,height, Math.round(scale*width), Math.round(scale*height), imageFile, render);
+    // The context holds the shared frame buffers, sprite batch and png encoders, it only lives during exportAllImages.
+    // Use context.writePNG in the write callbacks, so the configured compression level is used.
+
+    public static void renderSpriteBatchToPNG(RenderContext context, float x, float y, float width, float height, float scale, String category, String imageFile, Consumer<SpriteBatch> render) {
+        renderSpriteBatchToPNG(context, x,y,width,height, Math.round(scale*width), Math.round(scale*height), category, imageFile, render);
     }
 
-    public static void renderSpriteBatchToPNG(float x, float y, float width, float height, int iwidth, int iheight, String imageFile, Consumer<SpriteBatch> render) {
-        renderSpriteBatchToPixmap(x,y,width,height,iwidth,iheight,render,(Pixmap pixmap) -> PixmapIO.writePNG(Gdx.files.local(imageFile), pixmap));
+    public static void renderSpriteBatchToPNG(RenderContext context, float x, float y, float width, float height, int iwidth, int iheight, String category, String imageFile, Consumer<SpriteBatch> render) {
+        renderSpriteBatchToPixmap(context, x,y,width,height,iwidth,iheight,render,(Pixmap pixmap) -> context.writePNG(category, imageFile, pixmap));
     }
 
-    public static void renderSpriteBatchToPixmap(float x, float y, float width, float height, float scale, Consumer<SpriteBatch> render, Consumer<Pixmap> write) {
-        renderSpriteBatchToPixmap(x,y,width,height, Math.round(scale*width), Math.round(scale*height), render, write);
+    public static void renderSpriteBatchToPixmap(RenderContext context, float x, float y, float width, float height, float scale, Consumer<SpriteBatch> render, Consumer<Pixmap> write) {
+        renderSpriteBatchToPixmap(context, x,y,width,height, Math.round(scale*width), Math.round(scale*height), render, write);
     }
 
-    public static void renderSpriteBatchToPixmap(float x, float y, float width, float height, int iwidth, int iheight, Consumer<SpriteBatch> render, Consumer<Pixmap> write) {
-        // create a frame buffer
-        FrameBuffer fbo = new FrameBuffer(Pixmap.Format.RGBA8888, iwidth, iheight, false);
-        //make the FBO the current buffer
-        fbo.begin();
-        try {
-            //... clear the FBO color with transparent black ...
-            Gdx.gl.glClearColor(0f, 0f, 0f, 0f); //transparent black
-            Gdx.gl.glClear(Gdx.gl.GL_COLOR_BUFFER_BIT); //clear the color buffer
-            // set up batch and projection matrix
-            SpriteBatch sb = new SpriteBatch();
-            Matrix4 matrix = new Matrix4();
-            matrix.setToOrtho(x, x+width, y+height,y, 0.f, 1.f); // note: flip the vertical direction, otherwise cards are upside down
-            sb.setProjectionMatrix(matrix);
-            // render the thing
-            sb.begin();
-            try {
-                render.accept(sb);
-            } finally {
-                sb.end();
-                sb.dispose();
-            }
-            // write to png file
-            Pixmap pixmap = ScreenUtils.getFrameBufferPixmap(0,0, iwidth, iheight);
-            try {
-                write.accept(pixmap);
-            } finally {
-                pixmap.dispose();
-            }
-        } finally {
-            // done
-            fbo.end();
-            fbo.dispose();
-        }
+    // Note: write is called from an encoder thread, so it should not use the GL context
+    public static void renderSpriteBatchToPixmap(RenderContext context, float x, float y, float width, float height, int iwidth, int iheight, Consumer<SpriteBatch> render, Consumer<Pixmap> write) {
+        context.render(x,y,width,height,iwidth,iheight,render,write);
+    }
+
+    // Render several images of the same region with a single readback, see RenderContext.renderBatch
+    public static void renderSpriteBatchesToPixmaps(RenderContext context, float x, float y, float width, float height, float scale, List<Consumer<SpriteBatch>> renders, List<Consumer<Pixmap>> writes) {
+        context.renderBatch(x,y,width,height, Math.round(scale*width), Math.round(scale*height), renders, writes);
     }
 
     public static Pixmap resizePixmap(Pixmap pixmap, int width, int height) {
@@ -305,32 +557,133 @@ class ExportHelper {
             .render()
                 .withOutputCharset(UTF_8)
             .and()
-            .escape()
-                .engines()
-                    .add("json", (input) -> StringEscapeUtils.escapeJava(input)) // close enough
-                .and()
-            .and()
         .build();
+    // A single environment, so templates (and included fragments) are only parsed once per JVM
+    private static Environment twigEnvironment = JtwigTemplate.ENVIRONMENT_FACTORY.create(twigConfiguration);
+    private static ConcurrentHashMap<String,JtwigTemplate> twigTemplates = new ConcurrentHashMap<>();
+
+    private static JtwigTemplate getTwigTemplate(String templateFile) {
+        return twigTemplates.computeIfAbsent(templateFile, file -> new JtwigTemplate(twigEnvironment, new ResourceReference(ResourceReference.CLASSPATH, file)));
+    }
+
+    // Time spent rendering each template is kept in metrics.templateStats.
+    // The first render of a template includes parsing it.
+    private void logTemplateStats() {
+        for (Map.Entry<String,ExportStats.Entry> entry : metrics.templateStats.entries().entrySet()) {
+            ExportStats.Entry stats = entry.getValue();
+            Exporter.logger.info(String.format("Template %s: %d renders, %d ms total, first render %d ms",
+                entry.getKey(), stats.getCount(), stats.getMillis(), stats.getFirstMillis()));
+        }
+    }
 
-    private static void writeTwigTemplates(JtwigModel model, String indir, String outdir, String[] templateNames) {
+    private void writeTwigTemplates(ExecutorService pool, ArrayList<Future<?>> pending, JtwigModel model, String hash, String indir, String outdir, String[] templateNames) {
         new File(outdir).mkdirs();
         for (String templateName : templateNames) {
-            writeTwigTemplate(model, indir + "/" + templateName + ".twig", outdir + "/" + templateName);
+            String outFile = outdir + "/" + templateName;
+            if (manifest.unchanged(outFile, hash, outFile)) {
+                Exporter.logger.info("Skipping unchanged " + outFile);
+                continue;
+            }
+            pending.add(pool.submit(() -> writeTwigTemplate(model, indir + "/" + templateName + ".twig", outFile)));
         }
     }
 
-    private static void writeTwigTemplate(JtwigModel model, String templateFile, String outFile) {
+    private void writeTwigTemplate(JtwigModel model, String templateFile, String outFile) {
         try {
             Exporter.logger.info("Writing " + outFile);
-            FileOutputStream stream = new FileOutputStream(outFile);
-            JtwigTemplate template = JtwigTemplate.classpathTemplate(templateFile, twigConfiguration);
-            template.render(model, stream);
-            stream.close();
+            long start = System.nanoTime();
+            JtwigTemplate template = getTwigTemplate(templateFile);
+            writeFileAtomically(outFile, stream -> template.render(model, stream));
+            metrics.templateStats.add(templateFile, System.nanoTime() - start, 0);
         } catch (IOException e) {
+            manifest.failed(outFile);
             Exporter.logger.error(e);
         }
     }
 
+    interface JsonContent {
+        void write(JsonWriter out) throws IOException;
+    }
+
+    // Json files are written directly, not with a template, so they are always valid json
+    private void writeJson(ExecutorService pool, ArrayList<Future<?>> pending, String hash, String outFile, boolean pretty, JsonContent content) {
+        writeFile(pool, pending, hash, outFile, stream -> {
+            JsonWriter out = new JsonWriter(new OutputStreamWriter(stream, UTF_8), pretty);
+            content.write(out);
+            out.flush();
+        });
+    }
+
+    // Write a file that is not made with a template
+    private void writeFile(ExecutorService pool, ArrayList<Future<?>> pending, String hash, String outFile, FileWriter writer) {
+        if (manifest.unchanged(outFile, hash, outFile)) {
+            Exporter.logger.info("Skipping unchanged " + outFile);
+            return;
+        }
+        String name = new File(outFile).getName();
+        pending.add(pool.submit(() -> {
+            try {
+                Exporter.logger.info("Writing " + outFile);
+                long start = System.nanoTime();
+                writeFileAtomically(outFile, writer);
+                metrics.templateStats.add(name, System.nanoTime() - start, 0);
+            } catch (IOException e) {
+                manifest.failed(outFile);
+                Exporter.logger.error(e);
+            }
+        }));
+    }
+
+    private static void writeItems(JsonWriter out, ModExportData mod, List<CardExportData> cards, List<RelicExportData> relics, List<PotionExportData> potions,
+                                   List<CreatureExportData> creatures, List<KeywordExportData> keywords, boolean listmod) throws IOException {
+        out.beginObject();
+        if (mod != null && mod.info != null) {
+            out.name("mod");
+            mod.toJson(out);
+        }
+        out.name("cards").beginArray();
+        for (CardExportData x : cards) x.toJson(out, listmod);
+        out.endArray();
+        out.name("relics").beginArray();
+        for (RelicExportData x : relics) x.toJson(out, listmod);
+        out.endArray();
+        out.name("potions").beginArray();
+        for (PotionExportData x : potions) x.toJson(out, listmod);
+        out.endArray();
+        out.name("creatures").beginArray();
+        for (CreatureExportData x : creatures) x.toJson(out, listmod);
+        out.endArray();
+        out.name("keywords").beginArray();
+        for (KeywordExportData x : keywords) x.toJson(out, listmod);
+        out.endArray();
+        out.endObject();
+    }
+
+    interface FileWriter {
+        void write(OutputStream stream) throws IOException;
+    }
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    // Write to a temporary file, and move that over outFile when writing is done.
+    // This way a failed export never leaves behind half written files.
+    static void writeFileAtomically(String outFile, FileWriter writer) throws IOException {
+        Path target = Paths.get(outFile).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(temp), OUTPUT_BUFFER_SIZE)) {
+                writer.write(stream);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
     private JtwigModel getTwigModel(ModExportData mod) {
         JtwigModel model = JtwigModel.newModel();
         model.with("dir",exportDir(mod));
@@ -343,20 +696,20 @@ class ExportHelper {
         model.with("potions",mod.potions);
         model.with("cards",mod.cards);
         model.with("keywords",mod.keywords);
-        model.with("cardsAndUpgrades",withUpgrades(mod.cards));
+        model.with("cardsAndUpgrades",mod.cardsAndUpgrades);
         return model;
     }
 
     private JtwigModel getTwigModel(ColorExportData color) {
         JtwigModel model = JtwigModel.newModel();
         model.with("dir",exportDir(color));
-        model.with("root","../");
+        model.with("root","../../");
         model.with("listmod",true);
         model.with("name", color.name);
         model.with("color",color);
         model.with("relics",color.relics);
         model.with("cards",color.cards);
-        model.with("cardsAndUpgrades",withUpgrades(color.cards));
+        model.with("cardsAndUpgrades",color.cardsAndUpgrades);
         return model;
     }
 
@@ -372,7 +725,7 @@ class ExportHelper {
         model.with("potions",this.potions);
         model.with("cards",this.cards);
         model.with("keywords",this.keywords);
-        model.with("cardsAndUpgrades",withUpgrades(this.cards));
+        model.with("cardsAndUpgrades",this.cardsAndUpgrades);
         model.with("mods",this.mods);
         return model;
     }
@@ -0,0 +1,119 @@
+package sts_exporter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Remembers a hash of the inputs of every exported file, so unchanged files can be skipped in the next export.
+class ExportManifest {
+    private static final String HEADER = "# sts-exporter manifest ";
+    private final String file;
+    private final String version;
+    private HashMap<String,String> previous = new HashMap<>();
+    private TreeMap<String,String> current = new TreeMap<>();
+    private HashMap<String,String[]> outputs = new HashMap<>();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet(); // written from the worker threads
+
+    // @param version changing this invalidates all previous entries
+    // @param incremental if false, nothing is ever considered up to date
+    ExportManifest(String file, String version, boolean incremental) {
+        this.file = file;
+        this.version = version;
+        if (incremental) load();
+    }
+
+    private void load() {
+        File f = new File(file);
+        if (!f.exists()) return;
+        try (BufferedReader in = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (line == null || !line.equals(HEADER + version)) {
+                Exporter.logger.info("Export manifest is from a different version, exporting everything");
+                return;
+            }
+            while ((line = in.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) previous.put(line.substring(tab + 1), line.substring(0, tab));
+            }
+        } catch (IOException e) {
+            Exporter.logger.error("Failed to read export manifest " + file, e);
+            previous.clear();
+        }
+    }
+
+    void save() {
+        new File(file).getParentFile().mkdirs();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(new File(file).toPath(), StandardCharsets.UTF_8))) {
+            out.print(HEADER + version + "\n");
+            for (Map.Entry<String,String> entry : current.entrySet()) {
+                if (anyFailed(outputs.get(entry.getKey()))) continue;
+                out.print(entry.getValue() + "\t" + entry.getKey() + "\n");
+            }
+        } catch (IOException e) {
+            Exporter.logger.error("Failed to write export manifest " + file, e);
+        }
+    }
+
+    // Record the hash for the given key.
+    // Returns true if the hash is the same as in the previous export, and all output files still exist.
+    boolean unchanged(String key, String hash, String... outputs) {
+        current.put(key, hash);
+        this.outputs.put(key, outputs);
+        if (!hash.equals(previous.get(key))) return false;
+        for (String output : outputs) {
+            if (!new File(output).exists()) return false;
+        }
+        return true;
+    }
+
+    // Call when writing an output failed.
+    // The entries for that output are left out of the saved manifest, so it is exported again next time, even if an old file is still there.
+    void failed(String output) {
+        failed.add(output);
+    }
+
+    private boolean anyFailed(String[] files) {
+        if (files == null || failed.isEmpty()) return false;
+        for (String file : files) {
+            if (failed.contains(file)) return true;
+        }
+        return false;
+    }
+
+    boolean unchanged(String key, String hash, ExportPath... outputs) {
+        String[] files = new String[outputs.length];
+        for (int i = 0; i < outputs.length; ++i) {
+            files[i] = outputs[i].absolute;
+        }
+        return unchanged(key, hash, files);
+    }
+
+    // Hash of the string representation of all parts
+    static String hash(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (Object part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)0);
+            }
+            StringBuilder out = new StringBuilder();
+            for (byte b : digest.digest()) {
+                out.append(Character.forDigit((b >> 4) & 0xF, 16));
+                out.append(Character.forDigit(b & 0xF, 16));
+            }
+            return out.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
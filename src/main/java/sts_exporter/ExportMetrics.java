@@ -0,0 +1,164 @@
+package sts_exporter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Supplier;
+
+// Timing of the export phases, templates, images and individual items.
+// Written to export-metrics.json, so the cost of an export can be compared between modpack updates.
+class ExportMetrics {
+    private static final int SLOWEST_ITEMS = 20;
+
+    static class Item implements Comparable<Item> {
+        final String type, mod, name;
+        final long nanos;
+        Item(String type, String mod, String name, long nanos) {
+            this.type = type;
+            this.mod = mod;
+            this.name = name;
+            this.nanos = nanos;
+        }
+        @Override
+        public int compareTo(Item that) {
+            return Long.compare(this.nanos, that.nanos);
+        }
+    }
+
+    private final LinkedHashMap<String,Long> phases = new LinkedHashMap<>();
+    final ExportStats templateStats = new ExportStats();
+    final ExportStats imageStats = new ExportStats();
+    final ExportStats modImageStats = new ExportStats(); // time spent rendering per mod
+    // GL thread time of single renders and batches, and frame buffer creation.
+    // Before the render context every image created its own frame buffer and sprite batch,
+    // so (renders + batches) * the time per frame buffer is roughly what the reuse saves.
+    final ExportStats renderStats = new ExportStats();
+    private final PriorityQueue<Item> slowestItems = new PriorityQueue<>(); // min-heap, so the fastest of the slow items is dropped first
+
+    synchronized void phase(String name, long nanos) {
+        phases.merge(name, nanos, Long::sum);
+    }
+
+    void time(String name, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            phase(name, System.nanoTime() - start);
+        }
+    }
+
+    <T> T time(String name, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            phase(name, System.nanoTime() - start);
+        }
+    }
+
+    // Time spent rendering a single item (on the GL thread, excluding png encoding)
+    void item(String type, ModExportData mod, String name, long nanos) {
+        modImageStats.add(mod.id, nanos, 0);
+        synchronized (slowestItems) {
+            if (slowestItems.size() < SLOWEST_ITEMS) {
+                slowestItems.add(new Item(type, mod.id, name, nanos));
+            } else if (slowestItems.peek().nanos < nanos) {
+                slowestItems.poll();
+                slowestItems.add(new Item(type, mod.id, name, nanos));
+            }
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    void write(String file, List<ModExportData> mods) {
+        try {
+            ExportHelper.writeFileAtomically(file, stream -> {
+                JsonWriter out = new JsonWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), true);
+                out.beginObject();
+                out.name("phases").beginObject();
+                synchronized (this) {
+                    for (Map.Entry<String,Long> phase : phases.entrySet()) {
+                        out.property(phase.getKey(), millis(phase.getValue()));
+                    }
+                }
+                out.endObject();
+                out.name("templates").beginObject();
+                for (Map.Entry<String,ExportStats.Entry> entry : templateStats.entries().entrySet()) {
+                    ExportStats.Entry stats = entry.getValue();
+                    out.name(entry.getKey()).beginObject();
+                    out.property("renders", stats.getCount());
+                    out.property("totalMs", millis(stats.nanos.get()));
+                    out.property("firstRenderMs", millis(stats.firstNanos.get()));
+                    out.endObject();
+                }
+                out.endObject();
+                out.name("images").beginObject();
+                for (Map.Entry<String,ExportStats.Entry> entry : imageStats.entries().entrySet()) {
+                    ExportStats.Entry stats = entry.getValue();
+                    out.name(entry.getKey()).beginObject();
+                    out.property("written", stats.getCount());
+                    out.property("bytes", stats.getBytes());
+                    out.property("encodeMs", millis(stats.nanos.get()));
+                    out.endObject();
+                }
+                out.endObject();
+                out.name("rendering").beginObject();
+                for (Map.Entry<String,ExportStats.Entry> entry : renderStats.entries().entrySet()) {
+                    ExportStats.Entry stats = entry.getValue();
+                    out.name(entry.getKey()).beginObject();
+                    out.property("count", stats.getCount());
+                    out.property("totalMs", millis(stats.nanos.get()));
+                    out.property("firstMs", millis(stats.firstNanos.get()));
+                    out.endObject();
+                }
+                out.endObject();
+                out.name("mods").beginArray();
+                Map<String,ExportStats.Entry> modImages = modImageStats.entries();
+                for (ModExportData mod : mods) {
+                    ExportStats.Entry stats = modImages.get(mod.id);
+                    out.beginObject();
+                    out.property("id", mod.id);
+                    out.property("name", mod.name);
+                    out.property("version", mod.version);
+                    out.property("cards", mod.cards.size());
+                    out.property("relics", mod.relics.size());
+                    out.property("creatures", mod.creatures.size());
+                    out.property("potions", mod.potions.size());
+                    out.property("keywords", mod.keywords.size());
+                    out.property("renderMs", stats == null ? 0 : millis(stats.nanos.get()));
+                    out.endObject();
+                }
+                out.endArray();
+                out.name("slowestItems").beginArray();
+                ArrayList<Item> items;
+                synchronized (slowestItems) {
+                    items = new ArrayList<>(slowestItems);
+                }
+                Collections.sort(items, Collections.reverseOrder());
+                for (Item item : items) {
+                    out.beginObject();
+                    out.property("type", item.type);
+                    out.property("mod", item.mod);
+                    out.property("name", item.name);
+                    out.property("renderMs", millis(item.nanos));
+                    out.endObject();
+                }
+                out.endArray();
+                out.endObject();
+                out.flush();
+            });
+        } catch (IOException e) {
+            Exporter.logger.error("Failed to write export metrics " + file, e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package sts_exporter;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Thread safe counters of time (and bytes) spent on things like templates or image types.
+class ExportStats {
+    static class Entry {
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicLong nanos = new AtomicLong();
+        final AtomicLong firstNanos = new AtomicLong(-1);
+        final AtomicLong bytes = new AtomicLong();
+
+        public int getCount() { return count.get(); }
+        public long getMillis() { return nanos.get() / 1000000; }
+        public long getFirstMillis() { return firstNanos.get() / 1000000; }
+        public long getBytes() { return bytes.get(); }
+    }
+
+    private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<>();
+
+    void add(String name, long nanos, long bytes) {
+        Entry entry = entries.computeIfAbsent(name, n -> new Entry());
+        entry.count.incrementAndGet();
+        entry.nanos.addAndGet(nanos);
+        entry.firstNanos.compareAndSet(-1, nanos);
+        entry.bytes.addAndGet(bytes);
+    }
+
+    // Entries sorted by name
+    Map<String,Entry> entries() {
+        return new TreeMap<>(entries);
+    }
+}
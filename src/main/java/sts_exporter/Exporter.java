@@ -29,7 +29,15 @@ public class Exporter implements PostInitializeSubscriber {
     public static final String CONFIG_EXPORT_AT_START = "export_at_startup";
     public static final String CONFIG_INCLUDE_BASE_GAME = "include_base_game";
     public static final String CONFIG_RENDER_IMAGES = "render_images";
+    public static final String CONFIG_PNG_COMPRESSION = "png_compression";
     public static final String CONFIG_EXPORT_DIR = "export_dir";
+    public static final String CONFIG_INCREMENTAL = "incremental_export";
+    public static final String CONFIG_WORKER_THREADS = "worker_threads";
+    public static final String CONFIG_NDJSON = "ndjson_export";
+    public static final String CONFIG_BINARY_SNAPSHOT = "binary_snapshot";
+    public static final String CONFIG_SPRITE_ATLAS = "sprite_atlas";
+    public static final String CONFIG_RENDER_CACHE_DIR = "render_cache_dir";
+    public static final String CONFIG_CARD_RENDER_BATCH = "card_render_batch";
 
     public Exporter() {
         // config
@@ -41,7 +49,15 @@ public class Exporter implements PostInitializeSubscriber {
         if (!config.has(CONFIG_EXPORT_AT_START)) config.setBool(CONFIG_EXPORT_AT_START, false);
         if (!config.has(CONFIG_INCLUDE_BASE_GAME)) config.setBool(CONFIG_INCLUDE_BASE_GAME, false);
         if (!config.has(CONFIG_RENDER_IMAGES)) config.setBool(CONFIG_RENDER_IMAGES, true);
+        if (!config.has(CONFIG_PNG_COMPRESSION)) config.setString(CONFIG_PNG_COMPRESSION, "default");
         if (!config.has(CONFIG_EXPORT_DIR)) config.setString(CONFIG_EXPORT_DIR, "export");
+        if (!config.has(CONFIG_INCREMENTAL)) config.setBool(CONFIG_INCREMENTAL, false);
+        if (!config.has(CONFIG_WORKER_THREADS)) config.setInt(CONFIG_WORKER_THREADS, Runtime.getRuntime().availableProcessors());
+        if (!config.has(CONFIG_NDJSON)) config.setBool(CONFIG_NDJSON, false);
+        if (!config.has(CONFIG_BINARY_SNAPSHOT)) config.setBool(CONFIG_BINARY_SNAPSHOT, false);
+        if (!config.has(CONFIG_SPRITE_ATLAS)) config.setBool(CONFIG_SPRITE_ATLAS, false);
+        if (!config.has(CONFIG_RENDER_CACHE_DIR)) config.setString(CONFIG_RENDER_CACHE_DIR, ""); // empty for no cache
+        if (!config.has(CONFIG_CARD_RENDER_BATCH)) config.setInt(CONFIG_CARD_RENDER_BATCH, 1); // cards per frame buffer
         // initialize
         BaseMod.subscribe(this);
     }
@@ -65,6 +81,22 @@ public class Exporter implements PostInitializeSubscriber {
             config.setBool(CONFIG_RENDER_IMAGES, button.enabled);
             saveConfig();
         }));
+        settingsPanel.addUIElement(new ModLabeledToggleButton("Skip items that did not change since the last export", 360, 550, Settings.CREAM_COLOR, FontHelper.charDescFont, config.getBool(CONFIG_INCREMENTAL), settingsPanel, l -> {}, button -> {
+            config.setBool(CONFIG_INCREMENTAL, button.enabled);
+            saveConfig();
+        }));
+        settingsPanel.addUIElement(new ModLabeledToggleButton("Also export items as line delimited json (cards.ndjson, ...)", 360, 500, Settings.CREAM_COLOR, FontHelper.charDescFont, config.getBool(CONFIG_NDJSON), settingsPanel, l -> {}, button -> {
+            config.setBool(CONFIG_NDJSON, button.enabled);
+            saveConfig();
+        }));
+        settingsPanel.addUIElement(new ModLabeledToggleButton("Also export a binary snapshot of all items (items.snapshot)", 360, 450, Settings.CREAM_COLOR, FontHelper.charDescFont, config.getBool(CONFIG_BINARY_SNAPSHOT), settingsPanel, l -> {}, button -> {
+            config.setBool(CONFIG_BINARY_SNAPSHOT, button.enabled);
+            saveConfig();
+        }));
+        settingsPanel.addUIElement(new ModLabeledToggleButton("Pack small images into sprite sheets", 360, 400, Settings.CREAM_COLOR, FontHelper.charDescFont, config.getBool(CONFIG_SPRITE_ATLAS), settingsPanel, l -> {}, button -> {
+            config.setBool(CONFIG_SPRITE_ATLAS, button.enabled);
+            saveConfig();
+        }));
         settingsPanel.addUIElement(new ModButton(350, 200, settingsPanel, button -> {
             exportAll();
         }));
@@ -0,0 +1,165 @@
+package sts_exporter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Minimal streaming JSON writer.
+// Commas and (optional) indentation are inserted automatically, strings are escaped according to the JSON spec.
+class JsonWriter {
+    private final Writer out;
+    private final boolean pretty;
+    private int depth = 0;
+    private boolean first = true; // no values written yet in the current object/array
+    private boolean afterName = false;
+
+    JsonWriter(Writer out, boolean pretty) {
+        this.out = out;
+        this.pretty = pretty;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        beforeValue();
+        out.write('{');
+        depth++;
+        first = true;
+        return this;
+    }
+
+    JsonWriter endObject() throws IOException {
+        return end('}');
+    }
+
+    JsonWriter beginArray() throws IOException {
+        beforeValue();
+        out.write('[');
+        depth++;
+        first = true;
+        return this;
+    }
+
+    JsonWriter endArray() throws IOException {
+        return end(']');
+    }
+
+    private JsonWriter end(char c) throws IOException {
+        depth--;
+        if (!first) newline();
+        out.write(c);
+        first = false;
+        return this;
+    }
+
+    JsonWriter name(String name) throws IOException {
+        beforeValue();
+        writeString(name);
+        out.write(pretty ? ": " : ":");
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            out.write("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    JsonWriter value(double value) throws IOException {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.write("null");
+        } else {
+            out.write(Double.toString(value));
+        }
+        return this;
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    JsonWriter property(String name, String value) throws IOException {
+        return name(name).value(value);
+    }
+
+    JsonWriter property(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    JsonWriter property(String name, double value) throws IOException {
+        return name(name).value(value);
+    }
+
+    JsonWriter property(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    JsonWriter stringArray(String name, Iterable<String> values) throws IOException {
+        name(name).beginArray();
+        if (values != null) {
+            for (String value : values) value(value);
+        }
+        return endArray();
+    }
+
+    // End a top level value, for line delimited json
+    JsonWriter endLine() throws IOException {
+        if (depth != 0 || afterName) throw new IllegalStateException("endLine inside a json value");
+        out.write('\n');
+        return this;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (!first) out.write(',');
+            newline();
+        }
+        first = false;
+    }
+
+    private void newline() throws IOException {
+        if (!pretty) return;
+        out.write('\n');
+        for (int i = 0; i < depth; ++i) out.write("  ");
+    }
+
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            String escape;
+            if (c == '"') escape = "\\\"";
+            else if (c == '\\') escape = "\\\\";
+            else if (c == '\n') escape = "\\n";
+            else if (c == '\r') escape = "\\r";
+            else if (c == '\t') escape = "\\t";
+            else if (c < 0x20 || c == 0x2028 || c == 0x2029) escape = String.format("\\u%04x", (int)c);
+            else continue;
+            out.write(s, start, i - start);
+            out.write(escape);
+            start = i + 1;
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+}
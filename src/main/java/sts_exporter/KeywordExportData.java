@@ -1,5 +1,6 @@
 package sts_exporter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -10,20 +11,45 @@ import com.megacrit.cardcrawl.helpers.GameDictionary;
 import sts_exporter.patches.BaseModPatches;
 
 class KeywordExportData implements Comparable<KeywordExportData> {
-    public String description, descriptionHTML, descriptionPlain;
+    public String description, descriptionHTML, descriptionPlain, descriptionWiki;
     public String name;
     public ArrayList<String> names = new ArrayList<>();
     public ModExportData mod;
+    // Items that mention this keyword
+    public ArrayList<CardExportData> cards = new ArrayList<>();
+    public ArrayList<RelicExportData> relics = new ArrayList<>();
+    public ArrayList<PotionExportData> potions = new ArrayList<>();
 
     KeywordExportData(ExportHelper export, String name, String description) {
         this.name = name;
         this.description = description;
-        this.descriptionHTML = RelicExportData.smartTextToHTML(description,true,true);
-        this.descriptionPlain = RelicExportData.smartTextToPlain(description,true,true);
         this.mod = export.findMod(BaseModPatches.keywordClasses.get(name));
         this.mod.keywords.add(this);
     }
 
+    // Compute the text fields, this can be done in parallel for all keywords
+    void prepareText() {
+        SmartText descriptionParsed = RelicExportData.parseSmartText(description,true,true);
+        this.descriptionHTML = descriptionParsed.toHTML();
+        this.descriptionPlain = descriptionParsed.toPlain();
+        this.descriptionWiki = descriptionParsed.toWiki();
+    }
+
+    public String renderHash() {
+        return ExportManifest.hash(name, description, names, cards.size(), relics.size(), potions.size());
+    }
+
+    public JsonWriter toJson(JsonWriter out, boolean listmod) throws IOException {
+        out.beginObject();
+        out.property("name", name.isEmpty() ? name : name.substring(0,1).toUpperCase() + name.substring(1));
+        out.property("description", descriptionPlain);
+        if (listmod) {
+            out.stringArray("names", names);
+            out.property("mod", mod.modName);
+        }
+        return out.endObject();
+    }
+
     public static ArrayList<KeywordExportData> exportAllKeywords(ExportHelper export) {
         ArrayList<KeywordExportData> keywords = new ArrayList<>();
         HashMap<String,KeywordExportData> keywordLookup = new HashMap<>();
@@ -0,0 +1,165 @@
+package sts_exporter;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+// Finds keywords in a text, using an Aho-Corasick automaton that is built once for all keywords.
+// A text is scanned in a single pass, no matter how many keywords there are, and keywords can consist of multiple words.
+// Matching is case insensitive, and only whole words match.
+class KeywordMatcher {
+    interface Handler {
+        // @param keyword index of the keyword in the list passed to the constructor
+        // @return false to reject the match, then shorter keywords at the same start are tried
+        boolean match(int start, int end, int keyword);
+    }
+
+    // Trie nodes, node 0 is the root.
+    // The children of a node are sorted by label, so they can be found with a binary search.
+    private char[][] labels;
+    private int[][] children;
+    private int[] fail;        // node for the longest proper suffix that is in the trie
+    private int[] output;      // keyword that ends at this node, or -1
+    private int[] nextOutput;  // next node on the fail chain with an output, or -1
+    private int[] depth;
+    private int nodes;
+
+    KeywordMatcher(List<String> keywords) {
+        int capacity = 1;
+        for (String keyword : keywords) capacity += keyword.length();
+        labels = new char[capacity][];
+        children = new int[capacity][];
+        output = new int[capacity];
+        depth = new int[capacity];
+        newNode(0);
+        for (int i = 0; i < keywords.size(); ++i) {
+            String keyword = keywords.get(i);
+            if (keyword.isEmpty()) continue;
+            int node = 0;
+            for (int j = 0; j < keyword.length(); ++j) {
+                char c = Character.toLowerCase(keyword.charAt(j));
+                int child = child(node, c);
+                if (child < 0) child = addChild(node, c);
+                node = child;
+            }
+            output[node] = i;
+        }
+        buildFailLinks();
+    }
+
+    private int newNode(int nodeDepth) {
+        labels[nodes] = new char[0];
+        children[nodes] = new int[0];
+        output[nodes] = -1;
+        depth[nodes] = nodeDepth;
+        return nodes++;
+    }
+
+    private int addChild(int node, char c) {
+        int child = newNode(depth[node] + 1);
+        char[] ls = labels[node];
+        int[] cs = children[node];
+        int pos = -Arrays.binarySearch(ls, c) - 1;
+        char[] newLabels = new char[ls.length + 1];
+        int[] newChildren = new int[cs.length + 1];
+        System.arraycopy(ls, 0, newLabels, 0, pos);
+        System.arraycopy(cs, 0, newChildren, 0, pos);
+        newLabels[pos] = c;
+        newChildren[pos] = child;
+        System.arraycopy(ls, pos, newLabels, pos + 1, ls.length - pos);
+        System.arraycopy(cs, pos, newChildren, pos + 1, cs.length - pos);
+        labels[node] = newLabels;
+        children[node] = newChildren;
+        return child;
+    }
+
+    private int child(int node, char c) {
+        int pos = Arrays.binarySearch(labels[node], c);
+        return pos < 0 ? -1 : children[node][pos];
+    }
+
+    // Breadth first, so the fail link of a node's parent is known before the node itself
+    private void buildFailLinks() {
+        fail = new int[nodes];
+        nextOutput = new int[nodes];
+        nextOutput[0] = -1;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : children[0]) {
+            fail[child] = 0;
+            nextOutput[child] = -1;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            char[] ls = labels[node];
+            int[] cs = children[node];
+            for (int i = 0; i < cs.length; ++i) {
+                int f = fail[node];
+                int target;
+                while ((target = child(f, ls[i])) < 0 && f != 0) f = fail[f];
+                fail[cs[i]] = target < 0 ? 0 : target;
+                nextOutput[cs[i]] = output[fail[cs[i]]] >= 0 ? fail[cs[i]] : nextOutput[fail[cs[i]]];
+                queue.add(cs[i]);
+            }
+        }
+    }
+
+    // Longest match starting at each position, reused between calls on the same thread
+    private static final ThreadLocal<int[][]> matchBuffer = ThreadLocal.withInitial(() -> new int[2][256]);
+
+    // Report the keywords in a text, in order.
+    // Where keywords overlap, the one that starts first wins, and then the longest one that the handler accepts.
+    void find(CharSequence text, Handler handler) {
+        int length = text.length();
+        int[][] buffer = matchBuffer.get();
+        if (buffer[0].length < length) {
+            buffer = new int[2][Math.max(length, 2 * buffer[0].length)];
+            matchBuffer.set(buffer);
+        }
+        int[] matchEnd = buffer[0], matchKeyword = buffer[1];
+        Arrays.fill(matchEnd, 0, length, -1);
+        int node = 0;
+        for (int i = 0; i < length; ++i) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = child(node, c)) < 0 && node != 0) node = fail[node];
+            node = next < 0 ? 0 : next;
+            if (i + 1 < length && isWordChar(text.charAt(i + 1))) continue;
+            for (int n = output[node] >= 0 ? node : nextOutput[node]; n >= 0; n = nextOutput[n]) {
+                int start = i + 1 - depth[n];
+                if (start > 0 && isWordChar(text.charAt(start - 1))) continue;
+                // matches are found in order of their end, so the last one is the longest
+                matchEnd[start] = i + 1;
+                matchKeyword[start] = output[n];
+            }
+        }
+        for (int start = 0; start < length; ++start) {
+            if (matchEnd[start] < 0) continue;
+            int end = handler.match(start, matchEnd[start], matchKeyword[start]) ? matchEnd[start] : shorterMatch(text, start, matchEnd[start], handler);
+            if (end >= 0) start = end - 1;
+        }
+    }
+
+    // After the handler rejected a match, offer the shorter keywords that start at the same position, longest first.
+    // These are prefixes of the rejected one, so they are found by walking down the trie.
+    // @return end of the accepted match, or -1 if there is none
+    private int shorterMatch(CharSequence text, int start, int end, Handler handler) {
+        while (true) {
+            int shorterEnd = -1, keyword = -1;
+            int node = 0;
+            for (int i = start; i + 1 < end && node >= 0; ++i) {
+                node = child(node, Character.toLowerCase(text.charAt(i)));
+                if (node >= 0 && output[node] >= 0 && !isWordChar(text.charAt(i + 1))) {
+                    shorterEnd = i + 1;
+                    keyword = output[node];
+                }
+            }
+            if (shorterEnd < 0 || handler.match(start, shorterEnd, keyword)) return shorterEnd;
+            end = shorterEnd;
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c);
+    }
+}
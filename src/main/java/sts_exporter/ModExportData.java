@@ -1,24 +1,32 @@
 package sts_exporter;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import com.evacipated.cardcrawl.modthespire.Loader;
 import com.evacipated.cardcrawl.modthespire.ModInfo;
+import com.megacrit.cardcrawl.core.CardCrawlGame;
 
 class ModExportData {
     public ModInfo info;
     public String id;
     public String name;
     public String modName; // same as name, but empty for the base game
+    public String version;
     public URL url;
     public ArrayList<CardExportData> cards = new ArrayList<>();
+    public ArrayList<CardExportData> cardsAndUpgrades = new ArrayList<>(); // filled by ExportHelper.combineAndSort
     public ArrayList<RelicExportData> relics = new ArrayList<>();
     public ArrayList<CreatureExportData> creatures = new ArrayList<>();
     public ArrayList<PotionExportData> potions = new ArrayList<>();
     public ArrayList<KeywordExportData> keywords = new ArrayList<>();
+    ArrayList<SpriteAtlas> atlases = new ArrayList<>(); // only with the sprite atlas setting
     public static final String BASE_GAME_ID = "slay-the-spire";
 
     ModExportData(ExportHelper export, ModInfo info) {
@@ -26,6 +34,7 @@ class ModExportData {
         this.id = info.ID;
         this.name = info.Name;
         this.modName = info.Name;
+        this.version = String.valueOf(info.ModVersion);
         this.url = info.jarURL;
     }
 
@@ -34,6 +43,7 @@ class ModExportData {
         this.id = BASE_GAME_ID;
         this.name = "Slay the Spire";
         this.modName = "";
+        this.version = CardCrawlGame.TRUE_VERSION_NUM;
         try {
             this.url = new File(Loader.STS_JAR).toURI().toURL();
         } catch (MalformedURLException e) {
@@ -41,10 +51,69 @@ class ModExportData {
         }
     }
 
-    public void exportImages() {
-        for (CardExportData x : this.cards) x.exportImages();
-        for (RelicExportData x : this.relics) x.exportImages();
-        for (CreatureExportData x : this.creatures) x.exportImages();
-        for (PotionExportData x : this.potions) x.exportImages();
+    public void exportImages(ExportHelper export, RenderContext context) {
+        ExportManifest manifest = export.manifest;
+        ExportMetrics metrics = export.metrics;
+        // with batched rendering, the time of a batch is counted for the card that fills it
+        CardExportData.RenderBatch batch = new CardExportData.RenderBatch(context, export.card_render_batch, export.renderCache);
+        for (CardExportData x : this.cards) {
+            long start = System.nanoTime();
+            x.exportImages(manifest, batch);
+            metrics.item("card", this, x.name, System.nanoTime() - start);
+        }
+        batch.flush();
+        for (RelicExportData x : this.relics) {
+            long start = System.nanoTime();
+            x.exportImages(manifest, context, export.renderCache);
+            metrics.item("relic", this, x.name, System.nanoTime() - start);
+        }
+        for (CreatureExportData x : this.creatures) {
+            long start = System.nanoTime();
+            x.exportImages(manifest, context);
+            metrics.item("creature", this, x.name, System.nanoTime() - start);
+        }
+        for (PotionExportData x : this.potions) {
+            long start = System.nanoTime();
+            x.exportImages(manifest, context);
+            metrics.item("potion", this, x.name, System.nanoTime() - start);
+        }
+    }
+
+    // Hash of everything that goes into the per mod templates
+    public String renderHash() {
+        StringBuilder hash = new StringBuilder();
+        hash.append(id).append(name).append(version).append('\n');
+        for (CardExportData x : this.cards) {
+            hash.append(x.renderHash());
+            if (x.upgrade != null) hash.append(x.upgrade.renderHash());
+        }
+        for (RelicExportData x : this.relics) hash.append(x.renderHash());
+        for (CreatureExportData x : this.creatures) hash.append(x.renderHash());
+        for (PotionExportData x : this.potions) hash.append(x.renderHash());
+        for (KeywordExportData x : this.keywords) hash.append(x.renderHash());
+        return ExportManifest.hash(hash);
+    }
+
+    // Information from ModTheSpire.json, only for mods
+    public void toJson(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.property("name", name);
+        out.property("version", jsonString(info.ModVersion));
+        out.stringArray("authors", jsonList(info.Authors));
+        out.property("credits", jsonString(info.Credits));
+        out.property("description", jsonString(info.Description));
+        out.property("mts_version", jsonString(info.MTS_Version));
+        out.property("sts_version", jsonString(info.STS_Version));
+        out.stringArray("dependencies", jsonList(info.Dependencies));
+        out.stringArray("optional_dependencies", jsonList(info.OptionalDependencies));
+        out.endObject();
+    }
+
+    private static String jsonString(Object x) {
+        return x == null ? "" : x.toString();
+    }
+
+    private static List<String> jsonList(String[] xs) {
+        return xs == null ? Collections.emptyList() : Arrays.asList(xs);
     }
 }
\ No newline at end of file
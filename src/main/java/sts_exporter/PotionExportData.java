@@ -1,9 +1,9 @@
 package sts_exporter;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.IOException;
 import java.util.HashMap;
 
+import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.megacrit.cardcrawl.characters.AbstractPlayer;
 import com.megacrit.cardcrawl.helpers.PotionHelper;
@@ -13,8 +13,9 @@ class PotionExportData implements Comparable<PotionExportData> {
     public AbstractPotion potion;
     public ModExportData mod;
     public ExportPath image;
+    public SpriteAtlas.Sprite sprite; // only when exporting sprite sheets
     public String id, name, rarity;
-    public String description, descriptionHTML, descriptionPlain;
+    public String description, descriptionHTML, descriptionPlain, descriptionWiki;
     public String playerClass;
 
     PotionExportData(ExportHelper export, AbstractPotion potion, AbstractPlayer.PlayerClass cls) {
@@ -24,20 +25,40 @@ class PotionExportData implements Comparable<PotionExportData> {
         this.id = potion.ID;
         this.name = potion.name;
         this.description = potion.description;
-        this.descriptionHTML = RelicExportData.smartTextToHTML(potion.description,true,true);
-        this.descriptionPlain = RelicExportData.smartTextToPlain(potion.description,true,true);
         this.rarity = Exporter.rarityName(potion.rarity);
         this.playerClass = playerClass == null ? "" : playerClass.toString();
         this.image = export.exportPath(this.mod, "potions", this.name, ".png");
     }
 
-    public void exportImages() {
+    // Compute the text fields, this can be done in parallel for all potions
+    void prepareText() {
+        SmartText descriptionParsed = RelicExportData.parseSmartText(description,true,true);
+        this.descriptionHTML = descriptionParsed.toHTML();
+        this.descriptionPlain = descriptionParsed.toPlain();
+        this.descriptionWiki = descriptionParsed.toWiki();
+    }
+
+    public void exportImages(ExportManifest manifest, RenderContext context) {
+        if (manifest.unchanged(image.relative, renderHash(), image) && (sprite == null || !sprite.mustRender())) return;
         this.image.mkdir();
-        exportImageToFile(this.image.absolute);
+        exportImageToFile(context, this.image.absolute);
+    }
+
+    public String renderHash() {
+        return ExportManifest.hash(mod.version, potion.getClass().getName(), id, name, rarity, description, playerClass);
+    }
+
+    public JsonWriter toJson(JsonWriter out, boolean listmod) throws IOException {
+        out.beginObject();
+        out.property("name", name);
+        out.property("rarity", rarity);
+        out.property("description", descriptionPlain);
+        if (listmod) out.property("mod", mod.modName);
+        return out.endObject();
     }
 
     // Note: We can't use SingleRelicViewPopup, because that plays a sound.
-    private void exportImageToFile(String imageFile) {
+    private void exportImageToFile(RenderContext context, String imageFile) {
         Exporter.logger.info("Rendering potion image to " + imageFile);
         // Render to a png
         potion.move(32.0f,32.0f);
@@ -46,18 +67,18 @@ class PotionExportData implements Comparable<PotionExportData> {
         float y = 0;
         float xpadding = 0.0f;
         float ypadding = 0.0f;
-        ExportHelper.renderSpriteBatchToPNG(x-xpadding, y-ypadding, width+2*xpadding, height+2*ypadding, 1.0f, imageFile, (SpriteBatch sb) -> {
+        ExportHelper.renderSpriteBatchToPixmap(context, x-xpadding, y-ypadding, width+2*xpadding, height+2*ypadding, 1.0f, (SpriteBatch sb) -> {
             potion.render(sb);
+        }, (Pixmap pixmap) -> {
+            context.writePNG("potion", imageFile, pixmap);
+            if (sprite != null) sprite.draw(pixmap);
         });
     }
 
-    public static ArrayList<PotionExportData> exportAllPotions(ExportHelper export) {
-        ArrayList<PotionExportData> potions = new ArrayList<>();
+    public static void exportAllPotions(ExportHelper export) {
         for (HashMap.Entry<String,AbstractPlayer.PlayerClass> potionID : getAllPotionIds().entrySet()) {
-            potions.add(new PotionExportData(export, PotionHelper.getPotion(potionID.getKey()), potionID.getValue()));
+            new PotionExportData(export, PotionHelper.getPotion(potionID.getKey()), potionID.getValue());
         }
-        Collections.sort(potions);
-        return potions;
     }
 
     public static HashMap<String,AbstractPlayer.PlayerClass> getAllPotionIds() {
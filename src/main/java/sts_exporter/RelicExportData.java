@@ -1,14 +1,12 @@
 package sts_exporter;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.IOException;
 import java.util.HashMap;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Colors;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.PixmapIO;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.megacrit.cardcrawl.cards.AbstractCard;
@@ -32,9 +30,10 @@ class RelicExportData implements Comparable<RelicExportData> {
     public ExportPath image;
     public ExportPath popupImage;
     public ExportPath smallPopupImage;
+    public SpriteAtlas.Sprite sprite; // only when exporting sprite sheets
     public String name;
-    public String description, descriptionHTML, descriptionPlain;
-    public String flavorText, flavorTextHTML, flavorTextPlain;
+    public String description, descriptionHTML, descriptionPlain, descriptionWiki;
+    public String flavorText, flavorTextHTML, flavorTextPlain, flavorTextWiki;
 
     RelicExportData(ExportHelper export, AbstractRelic relic, AbstractCard.CardColor pool) {
         this.relic = relic;
@@ -42,11 +41,7 @@ class RelicExportData implements Comparable<RelicExportData> {
         this.mod.relics.add(this);
         this.name = relic.name;
         this.description = relic.description;
-        this.descriptionHTML = smartTextToHTML(relic.description,true,true);
-        this.descriptionPlain = smartTextToPlain(relic.description,true,true);
         this.flavorText = relic.flavorText;
-        this.flavorTextHTML = smartTextToHTML(relic.flavorText,false,true);;
-        this.flavorTextPlain = smartTextToPlain(relic.flavorText,false,true);;
         this.tier = Exporter.tierName(relic.tier);
         this.poolColor = pool;
         this.pool = pool == null ? "" : Exporter.colorName(pool);
@@ -55,18 +50,56 @@ class RelicExportData implements Comparable<RelicExportData> {
         this.smallPopupImage = export.exportPath(this.mod, "relics/small-popup", relic.relicId, ".png");
     }
 
-    public void exportImages() {
+    // Compute the text fields, this can be done in parallel for all relics
+    void prepareText() {
+        SmartText descriptionParsed = parseSmartText(description,true,true);
+        this.descriptionHTML = descriptionParsed.toHTML();
+        this.descriptionPlain = descriptionParsed.toPlain();
+        this.descriptionWiki = descriptionParsed.toWiki();
+        SmartText flavorTextParsed = parseSmartText(flavorText,false,true);
+        this.flavorTextHTML = flavorTextParsed.toHTML();
+        this.flavorTextPlain = flavorTextParsed.toPlain();
+        this.flavorTextWiki = flavorTextParsed.toWiki();
+    }
+
+    public void exportImages(ExportManifest manifest, RenderContext context, RenderCache cache) {
+        if (manifest.unchanged(image.relative, renderHash(), image, popupImage, smallPopupImage) && (sprite == null || !sprite.mustRender())) return;
         this.image.mkdir();
         this.popupImage.mkdir();
         this.smallPopupImage.mkdir();
-        exportImageToFile();
-        exportPopupImageToFile();
+        // the popup depends on the screen size
+        String key = cache == null ? null : cache.key("relic", renderHash(), relic.imgUrl, Settings.WIDTH, Settings.HEIGHT);
+        if (key != null && cache.restore(key, image, popupImage, smallPopupImage)) {
+            if (sprite != null) {
+                Pixmap pixmap = new Pixmap(Gdx.files.local(image.absolute));
+                sprite.draw(pixmap);
+                pixmap.dispose();
+            }
+            return;
+        }
+        exportImageToFile(context, cache, key);
+        exportPopupImageToFile(context, cache, key);
+    }
+
+    public String renderHash() {
+        return ExportManifest.hash(mod.version, relic.getClass().getName(), name, tier, pool, description, flavorText);
+    }
+
+    public JsonWriter toJson(JsonWriter out, boolean listmod) throws IOException {
+        out.beginObject();
+        out.property("name", name);
+        out.property("tier", tier);
+        out.property("pool", pool);
+        out.property("description", descriptionPlain);
+        out.property("flavorText", flavorTextPlain);
+        if (listmod) out.property("mod", mod.modName);
+        return out.endObject();
     }
 
-    private void exportImageToFile() {
+    private void exportImageToFile(RenderContext context, RenderCache cache, String key) {
         Exporter.logger.info("Rendering relic image to " + this.image.absolute);
         // Render to a png
-        ExportHelper.renderSpriteBatchToPNG(0.f, 0.f, 256.f, 256.f, 1.0f, this.image.absolute, (SpriteBatch sb) -> {
+        ExportHelper.renderSpriteBatchToPixmap(context, 0.f, 0.f, 256.f, 256.f, 1.0f, (SpriteBatch sb) -> {
             sb.setColor(new Color(0.0f, 0.0f, 0.0f, 0.33f));
             sb.draw(this.relic.outlineImg, 64.0f, 64.0f, 64.0f, 64.0f, 128.0f, 128.0f, 2.0f, 2.0f, 0.0f, 0, 0, 128, 128, false, false);
             sb.setColor(Color.WHITE);
@@ -75,10 +108,14 @@ class RelicExportData implements Comparable<RelicExportData> {
             } else {
                 sb.draw(relic.largeImg, 0.0f, 0.0f, 128.0f, 128.0f, 256.0f, 256.0f, 1.0f, 1.0f, 0.0f, 0, 0, 256, 256, false, false);
             }
+        }, (Pixmap pixmap) -> {
+            context.writePNG("relic", this.image.absolute, pixmap);
+            if (cache != null) cache.store(key, 0, this.image);
+            if (sprite != null) sprite.draw(pixmap);
         });
     }
 
-    private void exportPopupImageToFile() {
+    private void exportPopupImageToFile(RenderContext context, RenderCache cache, String key) {
         Exporter.logger.info("Rendering relic popup image to " + this.popupImage.absolute);
         // See SingleRelicViewPopup.generateRarityLabel and generateFrameImg and renderRarity
         final float DESC_LINE_SPACING = 30.0f * Settings.scale;
@@ -146,7 +183,7 @@ class RelicExportData implements Comparable<RelicExportData> {
         float y = (Settings.HEIGHT - height) * 0.5f - 20.0f;
         float xpadding = 0.0f;
         float ypadding = 0.0f;
-        ExportHelper.renderSpriteBatchToPixmap(x-xpadding, y-ypadding, width+2*xpadding, height+2*ypadding, 1.0f, (SpriteBatch sb) -> {
+        ExportHelper.renderSpriteBatchToPixmap(context, x-xpadding, y-ypadding, width+2*xpadding, height+2*ypadding, 1.0f, (SpriteBatch sb) -> {
             // renderPopupBg
             sb.setColor(Color.WHITE);
             sb.draw(ImageMaster.RELIC_POPUP, (float)Settings.WIDTH / 2.0f - 960.0f, (float)Settings.HEIGHT / 2.0f - 540.0f, 960.0f, 540.0f, 1920.0f, 1080.0f, Settings.scale, Settings.scale, 0.0f, 0, 0, 1920, 1080, false, false);
@@ -175,15 +212,19 @@ class RelicExportData implements Comparable<RelicExportData> {
                 FontHelper.renderWrappedText(sb, FontHelper.SRV_quoteFont, "\"Missing quote...\"", (float)Settings.WIDTH / 2.0f, (float)Settings.HEIGHT / 2.0f - 300.0f * Settings.scale, DESC_LINE_WIDTH, Settings.CREAM_COLOR, 1.0f);
             }
         }, (Pixmap pixmap) -> {
-            PixmapIO.writePNG(Gdx.files.local(this.popupImage.absolute), pixmap);
+            context.writePNG("relic popup", this.popupImage.absolute, pixmap);
             Pixmap smallPixmap = ExportHelper.resizePixmap(pixmap, Math.round(width/2), Math.round(height/2));
-            PixmapIO.writePNG(Gdx.files.local(this.smallPopupImage.absolute), smallPixmap);
+            context.writePNG("small relic popup", this.smallPopupImage.absolute, smallPixmap);
+            if (cache != null) {
+                cache.store(key, 1, this.popupImage);
+                cache.store(key, 2, this.smallPopupImage);
+            }
             smallPixmap.dispose();
         });
     }
 
     // Note: We can't use SingleRelicViewPopup, because that plays a sound.
-    private void exportImageToFileWithAnoyingSound() {
+    private void exportImageToFileWithAnoyingSound(RenderContext context) {
         Exporter.logger.info("Rendering relic image to " + this.image.absolute);
         // Make relic seen
         SingleRelicViewPopup popup = CardCrawlGame.relicPopup;
@@ -195,171 +236,45 @@ class RelicExportData implements Comparable<RelicExportData> {
         float y = (Settings.HEIGHT - height) * 0.5f;
         float xpadding = 0.0f;
         float ypadding = 0.0f;
-        ExportHelper.renderSpriteBatchToPNG(x-xpadding, y-ypadding, width+2*xpadding, height+2*ypadding, 1.0f, this.image.absolute, (SpriteBatch sb) -> {
+        ExportHelper.renderSpriteBatchToPNG(context, x-xpadding, y-ypadding, width+2*xpadding, height+2*ypadding, 1.0f, "relic", this.image.absolute, (SpriteBatch sb) -> {
             popup.render(sb);
         });
         popup.close();
     }
 
-    public static String smartTextToHTML(String string, boolean smart, boolean markup) {
-        return parseSmartText(string,smart,markup,true);
-    }
-
-    public static String smartTextToPlain(String string, boolean smart, boolean markup) {
-        return parseSmartText(string,smart,markup,false);
+    // Parse "smart text" from FontHelper, it can then be rendered as html, plain text or wiki markup
+    static SmartText parseSmartText(String string, boolean smart, boolean markup) {
+        return SmartText.parse(string, smart, markup, RelicExportData::isColor);
     }
 
-    // Parse "smart text" from FontHelper into plain text or html
-    // @param smart FontHelper.renderSmartText escapes
-    // @param markup GlyphLayout color markup
-    // @param html HTML or plain text output
-    public static String parseSmartText(String string, boolean smart, boolean markup, boolean html) {
-        if (string == null) return "";
-        StringBuilder out = new StringBuilder();
-        boolean space = false; // should we insert a space?
-        boolean wordStart = true;
-        int wordTags = 0; // number of tags that close at the end of the word
-        int openTags = 0;
-        for (int pos = 0; pos < string.length();) {
-            char c = string.charAt(pos);
-            if (c == ' ') {
-                while (wordTags > 0) {
-                    wordTags--; openTags--;
-                    if (html) out.append("</span>");
-                }
-                pos++;
-                wordStart = true;
-                space = true;
-            } else if (c == '\n' || c == '\t') {
-                while (wordTags > 0) {
-                    wordTags--; openTags--;
-                    if (html) out.append("</span>");
-                }
-                pos++;
-                wordStart = true;
-                space = false;
-            } else if (smart && wordStart && string.startsWith("NL ",pos)) {
-                out.append('\n');
-                pos += 3;
-                space = false;
-            } else if (smart && wordStart && string.startsWith("TAB ",pos)) {
-                out.append('\t');
-                pos += 4;
-                space = false;
-            } else if (smart && wordStart && c == '#' && pos+1 < string.length()) {
-                if (space) {
-                    out.append(' ');
-                    space = false;
-                }
-                if (html) {
-                    out.append("<span class=\"color-");
-                    out.append(string.charAt(pos+1));
-                    out.append("\">");
-                }
-                pos += 2;
-                openTags++;
-                wordTags++;
-            } else if (markup && c == '[' && pos+1 < string.length() && string.charAt(pos+1) == '[') {
-                // escaped [
-                if (space) {
-                    out.append(' ');
-                    space = false;
-                }
-                wordStart = false;
-                out.append(c);
-                pos += 2;
-            } else if (markup && c == '[' && pos + 1 < string.length()) {
-                if (space) {
-                    out.append(' ');
-                    space = false;
-                }
-                int end = string.indexOf(']',pos);
-                if (end == -1 || (end == pos+1 && openTags == 0) || (end == pos+2)) {
-                    // no closing bracket, or an energy orb like [R]
-                    wordStart = false;
-                    out.append(c);
-                    pos++;
-                } else if (end == pos+1) {
-                    if (openTags > 0) {
-                        if (wordTags > 0) wordTags--;
-                        openTags--;
-                        if (html) out.append("</span>");
-                    }
-                    pos = end + 1;
-                } else {
-                    String colorName = string.substring(pos+1,end);
-                    if (colorName.charAt(0) != '#' && Colors.get(colorName) == null) {
-                        // not a valid color, ignore
-                        wordStart = false;
-                        out.append(c);
-                        pos++;
-                    } else {
-                        if (html) {
-                            out.append("<span style=\"color:");
-                            out.append(colorName);
-                            out.append("\">");
-                        }
-                        openTags++;
-                        if (smart || wordTags > 0) {
-                            // note: FontHelper uses separate calls to GlyphLayout.setText, so each word is rendered independently, as a result all tags end at word boundaries
-                            // note2: If we are already using wordTags, then also close this tag at the end of the word
-                            wordTags++;
-                        }
-                        pos = end + 1;
-                    }
-                }
-            } else {
-                if (space) {
-                    out.append(' ');
-                    space = false;
-                }
-                wordStart = false;
-                if (html && c == '<') {
-                    out.append("&lt;");
-                } else if (html && c == '>') {
-                    out.append("&gt;");
-                } else if (html && c == '&') {
-                    out.append("&amp;");
-                } else {
-                    out.append(c);
-                }
-                pos++;
-            }
-        }
-        while (openTags > 0) {
-            openTags--;
-            if (html) out.append("</span>");
-        }
-        return out.toString();
+    static boolean isColor(String colorName) {
+        return Colors.get(colorName) != null;
     }
 
 
-    public static ArrayList<RelicExportData> exportAllRelics(ExportHelper export) {
-        ArrayList<RelicExportData> relics = new ArrayList<>();
+    public static void exportAllRelics(ExportHelper export) {
         @SuppressWarnings("unchecked")
         HashMap<String,AbstractRelic> sharedRelics = (HashMap<String,AbstractRelic>)ReflectionHacks.getPrivateStatic(RelicLibrary.class, "sharedRelics");
         for (AbstractRelic relic : sharedRelics.values()) {
-            relics.add(new RelicExportData(export, relic, null));
+            new RelicExportData(export, relic, null);
         }
         for (AbstractRelic relic : RelicLibrary.redList) {
-            relics.add(new RelicExportData(export, relic, AbstractCard.CardColor.RED));
+            new RelicExportData(export, relic, AbstractCard.CardColor.RED);
         }
         for (AbstractRelic relic : RelicLibrary.greenList) {
-            relics.add(new RelicExportData(export, relic, AbstractCard.CardColor.GREEN));
+            new RelicExportData(export, relic, AbstractCard.CardColor.GREEN);
         }
         for (AbstractRelic relic : RelicLibrary.blueList) {
-            relics.add(new RelicExportData(export, relic, AbstractCard.CardColor.BLUE));
+            new RelicExportData(export, relic, AbstractCard.CardColor.BLUE);
         }
         for (AbstractRelic relic : RelicLibrary.whiteList) {
-            relics.add(new RelicExportData(export, relic, AbstractCard.CardColor.PURPLE));
+            new RelicExportData(export, relic, AbstractCard.CardColor.PURPLE);
         }
         for (HashMap.Entry<AbstractCard.CardColor,HashMap<String,AbstractRelic>> entry : BaseMod.getAllCustomRelics().entrySet()) {
             for (AbstractRelic relic : entry.getValue().values()) {
-                relics.add(new RelicExportData(export, relic, entry.getKey()));
+                new RelicExportData(export, relic, entry.getKey());
             }
         }
-        Collections.sort(relics);
-        return relics;
     }
 
     @Override
@@ -0,0 +1,99 @@
+package sts_exporter;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Keeps rendered images between exports, in a directory that can be shared by different export directories.
+// Entries are keyed by a hash of everything that goes into rendering an item, including the exporter version,
+// so an item with a known key is linked (or copied) from the cache instead of rendered again.
+//
+// Files are hard linked where possible, this is safe because images are never modified in place, see RenderContext.writePNG.
+class RenderCache {
+    private final Path dir;
+    private final String version;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    RenderCache(String dir, String version) {
+        this.dir = Paths.get(dir).toAbsolutePath();
+        this.version = version;
+    }
+
+    // Key for the images of an item
+    String key(String type, Object... inputs) {
+        return ExportManifest.hash(version, type, ExportManifest.hash(inputs));
+    }
+
+    private Path entry(String key, int output) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + "-" + output + ".png");
+    }
+
+    // Put the cached images for key in the given output files.
+    // Returns false if they are not all in the cache, then the item has to be rendered.
+    boolean restore(String key, ExportPath... outputs) {
+        for (int i = 0; i < outputs.length; ++i) {
+            if (!Files.exists(entry(key, i))) {
+                misses.incrementAndGet();
+                return false;
+            }
+        }
+        try {
+            for (int i = 0; i < outputs.length; ++i) {
+                Path target = Paths.get(outputs[i].absolute).toAbsolutePath();
+                Files.deleteIfExists(target);
+                linkOrCopy(entry(key, i), target);
+            }
+        } catch (IOException e) {
+            Exporter.logger.warn("Failed to use cached render of " + outputs[0].relative, e);
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    // Add a rendered image to the cache, call this after the file is written.
+    // @param output index of the output, in the same order as passed to restore
+    void store(String key, int output, ExportPath file) {
+        Path cached = entry(key, output);
+        try {
+            Files.createDirectories(cached.getParent());
+            Path temp = Files.createTempFile(cached.getParent(), cached.getFileName().toString(), ".tmp");
+            try {
+                Files.delete(temp);
+                linkOrCopy(Paths.get(file.absolute).toAbsolutePath(), temp);
+                try {
+                    Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            Exporter.logger.warn("Failed to add " + file.relative + " to the render cache", e);
+        }
+    }
+
+    private static void linkOrCopy(Path from, Path to) throws IOException {
+        try {
+            Files.createLink(to, from);
+        } catch (IOException | UnsupportedOperationException e) {
+            // different file system, or links are not supported
+            Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    int getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,320 @@
+package sts_exporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+// GL objects that are reused for rendering all images.
+// Frame buffers are kept per size, most images have one of a handful of sizes.
+//
+// The GL thread only reads back the pixels, encoding and writing the images happens in a pool of encoder threads.
+// The queue of the encoders is bounded, when it is full the GL thread does the encoding itself, so memory use stays capped.
+// Only buffers up to MAX_POOLED_PIXELS are kept around, larger ones (like the target of a batch) are freed right after use,
+// so at most MAX_FRAME_BUFFERS + MAX_POOLED_PIXMAPS buffers of 4 MB each are held.
+class RenderContext {
+    private static final int MAX_POOLED_PIXMAPS = 32;
+    private static final int MAX_FRAME_BUFFERS = 16;
+    private static final int MAX_POOLED_PIXELS = 1024 * 1024;
+    private static final int MAX_BATCH_TARGET_SIZE = 4096; // supported by all drivers we care about, including llvmpipe
+    private final int maxTargetSize;
+    private final SpriteBatch sb = new SpriteBatch();
+    private final Matrix4 projection = new Matrix4();
+    private final Matrix4 identity = new Matrix4();
+    private final Matrix4 cellTransform = new Matrix4();
+    private final LinkedHashMap<Long,FrameBuffer> frameBuffers = new LinkedHashMap<Long,FrameBuffer>(MAX_FRAME_BUFFERS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long,FrameBuffer> eldest) {
+            if (size() > MAX_FRAME_BUFFERS) {
+                eldest.getValue().dispose();
+                return true;
+            }
+            return false;
+        }
+    };
+    private final ThreadPoolExecutor encoders;
+    private final ConcurrentHashMap<Long,ConcurrentLinkedQueue<Pixmap>> pixmapPool = new ConcurrentHashMap<>();
+    private final AtomicInteger pooledPixmaps = new AtomicInteger();
+    private final ThreadLocal<PixmapIO.PNG> pngWriters;
+    private final ConcurrentLinkedQueue<PixmapIO.PNG> allPngWriters = new ConcurrentLinkedQueue<>();
+    private final ExportStats imageStats;
+    private final ExportStats renderStats; // GL thread time, and how many frame buffers had to be created
+    private final ExportManifest manifest; // told about failed writes, can be null
+
+    RenderContext(int encoderThreads, int pngCompression, ExportStats imageStats, ExportStats renderStats, ExportManifest manifest) {
+        this.imageStats = imageStats;
+        this.renderStats = renderStats;
+        this.manifest = manifest;
+        pngWriters = ThreadLocal.withInitial(() -> {
+            PixmapIO.PNG png = new PixmapIO.PNG();
+            png.setFlipY(false);
+            png.setCompression(pngCompression);
+            allPngWriters.add(png);
+            return png;
+        });
+        encoders = new ThreadPoolExecutor(encoderThreads, encoderThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(2 * encoderThreads), new ThreadPoolExecutor.CallerRunsPolicy());
+        IntBuffer maxTextureSize = BufferUtils.newIntBuffer(16);
+        Gdx.gl.glGetIntegerv(GL20.GL_MAX_TEXTURE_SIZE, maxTextureSize);
+        maxTargetSize = maxTextureSize.get(0) > 0 ? Math.min(MAX_BATCH_TARGET_SIZE, maxTextureSize.get(0)) : MAX_BATCH_TARGET_SIZE;
+    }
+
+    private static boolean pooled(int width, int height) {
+        return (long)width * height <= MAX_POOLED_PIXELS;
+    }
+
+    // Frame buffers that are not pooled must be released with releaseFrameBuffer
+    private FrameBuffer frameBuffer(int width, int height) {
+        if (!pooled(width, height)) {
+            return newFrameBuffer(width, height);
+        }
+        long key = sizeKey(width, height);
+        FrameBuffer fbo = frameBuffers.get(key);
+        if (fbo == null) {
+            fbo = newFrameBuffer(width, height);
+            frameBuffers.put(key, fbo);
+        }
+        return fbo;
+    }
+
+    private FrameBuffer newFrameBuffer(int width, int height) {
+        long start = System.nanoTime();
+        FrameBuffer fbo = new FrameBuffer(Pixmap.Format.RGBA8888, width, height, false);
+        renderStats.add("frame buffer", System.nanoTime() - start, 0);
+        return fbo;
+    }
+
+    private static void releaseFrameBuffer(FrameBuffer fbo) {
+        if (!pooled(fbo.getWidth(), fbo.getHeight())) fbo.dispose();
+    }
+
+    void render(float x, float y, float width, float height, int iwidth, int iheight, Consumer<SpriteBatch> render, Consumer<Pixmap> write) {
+        long start = System.nanoTime();
+        FrameBuffer fbo = frameBuffer(iwidth, iheight);
+        //make the FBO the current buffer
+        fbo.begin();
+        try {
+            //... clear the FBO color with transparent black ...
+            Gdx.gl.glClearColor(0f, 0f, 0f, 0f); //transparent black
+            Gdx.gl.glClear(Gdx.gl.GL_COLOR_BUFFER_BIT); //clear the color buffer
+            // set up batch and projection matrix, undo any changes made by the previous render
+            projection.setToOrtho(x, x+width, y+height,y, 0.f, 1.f); // note: flip the vertical direction, otherwise cards are upside down
+            resetBatch();
+            // render the thing
+            sb.begin();
+            try {
+                render.accept(sb);
+            } finally {
+                sb.end();
+            }
+            // read back pixels, and write to png file in the background
+            Pixmap pixmap = acquirePixmap(iwidth, iheight);
+            ByteBuffer pixels = pixmap.getPixels();
+            pixels.clear();
+            Gdx.gl.glPixelStorei(GL20.GL_PACK_ALIGNMENT, 1);
+            Gdx.gl.glReadPixels(0, 0, iwidth, iheight, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, pixels);
+            encoders.execute(() -> {
+                try {
+                    write.accept(pixmap);
+                } catch (Exception e) {
+                    Exporter.logger.error("Error while writing image", e);
+                } finally {
+                    releasePixmap(pixmap);
+                }
+            });
+        } finally {
+            fbo.end();
+            releaseFrameBuffer(fbo);
+        }
+        renderStats.add("render", System.nanoTime() - start, 0);
+    }
+
+    private void resetBatch() {
+        sb.setProjectionMatrix(projection);
+        sb.setTransformMatrix(identity);
+        sb.setColor(Color.WHITE);
+        sb.setShader(null);
+        sb.enableBlending();
+        sb.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+    }
+
+    // Render several images of the same region and size into one frame buffer, and read them back at once.
+    // This avoids a pipeline stall per image, which is most of the cost with software rendering.
+    // The images are laid out in a grid, each translated to its own cell and clipped to it.
+    // The grid never exceeds the maximum texture size, when fewer than two images fit in it they are rendered one at a time.
+    void renderBatch(float x, float y, float width, float height, int iwidth, int iheight, List<Consumer<SpriteBatch>> renders, List<Consumer<Pixmap>> writes) {
+        int columns = Math.min(renders.size(), maxTargetSize / iwidth);
+        int maxRows = maxTargetSize / iheight;
+        if (renders.size() == 1 || columns * maxRows < 2) {
+            for (int i = 0; i < renders.size(); ++i) {
+                render(x, y, width, height, iwidth, iheight, renders.get(i), writes.get(i));
+            }
+            return;
+        }
+        if (renders.size() > columns * maxRows) {
+            // doesn't fit in one frame buffer
+            for (int i = 0; i < renders.size(); i += columns * maxRows) {
+                int end = Math.min(renders.size(), i + columns * maxRows);
+                renderBatch(x, y, width, height, iwidth, iheight, renders.subList(i, end), writes.subList(i, end));
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        int rows = (renders.size() + columns - 1) / columns;
+        int twidth = columns * iwidth, theight = rows * iheight;
+        FrameBuffer fbo = frameBuffer(twidth, theight);
+        fbo.begin();
+        try {
+            Gdx.gl.glClearColor(0f, 0f, 0f, 0f);
+            Gdx.gl.glClear(Gdx.gl.GL_COLOR_BUFFER_BIT);
+            projection.setToOrtho(0, columns*width, rows*height, 0, 0.f, 1.f); // flipped, like in render
+            resetBatch();
+            Gdx.gl.glEnable(GL20.GL_SCISSOR_TEST);
+            sb.begin();
+            try {
+                for (int i = 0; i < renders.size(); ++i) {
+                    int column = i % columns, row = i / columns;
+                    sb.flush(); // the scissor box applies when drawing
+                    Gdx.gl.glScissor(column * iwidth, (rows - 1 - row) * iheight, iwidth, iheight);
+                    cellTransform.setToTranslation(column * width - x, row * height - y, 0);
+                    sb.setTransformMatrix(cellTransform);
+                    sb.setColor(Color.WHITE);
+                    renders.get(i).accept(sb);
+                }
+            } finally {
+                sb.end();
+                Gdx.gl.glDisable(GL20.GL_SCISSOR_TEST);
+            }
+            // read back all pixels, then cut out the cells, which is just a copy of some rows
+            Pixmap target = acquirePixmap(twidth, theight);
+            ByteBuffer pixels = target.getPixels();
+            pixels.clear();
+            Gdx.gl.glPixelStorei(GL20.GL_PACK_ALIGNMENT, 1);
+            Gdx.gl.glReadPixels(0, 0, twidth, theight, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, pixels);
+            for (int i = 0; i < renders.size(); ++i) {
+                int column = i % columns, row = i / columns;
+                Pixmap pixmap = acquirePixmap(iwidth, iheight);
+                copyPixels(target, column * iwidth, (rows - 1 - row) * iheight, pixmap);
+                Consumer<Pixmap> write = writes.get(i);
+                encoders.execute(() -> {
+                    try {
+                        write.accept(pixmap);
+                    } catch (Exception e) {
+                        Exporter.logger.error("Error while writing image", e);
+                    } finally {
+                        releasePixmap(pixmap);
+                    }
+                });
+            }
+            releasePixmap(target);
+        } finally {
+            fbo.end();
+            releaseFrameBuffer(fbo);
+        }
+        renderStats.add("batch", System.nanoTime() - start, 0);
+    }
+
+    // Copy the pixels of a rectangle starting at x,y to another pixmap, without blending
+    private static void copyPixels(Pixmap from, int x, int y, Pixmap to) {
+        ByteBuffer src = from.getPixels().duplicate();
+        ByteBuffer dst = to.getPixels().duplicate();
+        int rowBytes = to.getWidth() * 4;
+        for (int row = 0; row < to.getHeight(); ++row) {
+            int start = ((y + row) * from.getWidth() + x) * 4;
+            ((Buffer)src).limit(start + rowBytes); // note: cast for compatibility with java 8
+            ((Buffer)src).position(start);
+            ((Buffer)dst).position(row * rowBytes);
+            dst.put(src);
+        }
+    }
+
+    // Called from the encoder threads
+    void writePNG(String category, String imageFile, Pixmap pixmap) {
+        try {
+            writePNG(pngWriters.get(), imageStats, category, imageFile, pixmap);
+        } catch (RuntimeException e) {
+            if (manifest != null) manifest.failed(imageFile);
+            throw e;
+        }
+    }
+
+    // Write to a temporary file that then replaces the image, so a failed write never leaves a broken image behind,
+    // and an image that is a hard link to the render cache is replaced instead of overwritten.
+    static void writePNG(PixmapIO.PNG png, ExportStats stats, String category, String imageFile, Pixmap pixmap) {
+        long start = System.nanoTime();
+        try {
+            ExportHelper.writeFileAtomically(imageFile, stream -> png.write(stream, pixmap));
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error writing PNG: " + imageFile, e);
+        }
+        stats.add(category, System.nanoTime() - start, new File(imageFile).length());
+    }
+
+    private static long sizeKey(int width, int height) {
+        return ((long)width << 32) | height;
+    }
+
+    private Pixmap acquirePixmap(int width, int height) {
+        ConcurrentLinkedQueue<Pixmap> pool = pixmapPool.get(sizeKey(width, height));
+        Pixmap pixmap = pool == null ? null : pool.poll();
+        if (pixmap == null) {
+            return new Pixmap(width, height, Pixmap.Format.RGBA8888);
+        }
+        pooledPixmaps.decrementAndGet();
+        return pixmap;
+    }
+
+    private void releasePixmap(Pixmap pixmap) {
+        if (!pooled(pixmap.getWidth(), pixmap.getHeight())) {
+            pixmap.dispose();
+        } else if (pooledPixmaps.incrementAndGet() > MAX_POOLED_PIXMAPS) {
+            pooledPixmaps.decrementAndGet();
+            pixmap.dispose();
+        } else {
+            pixmapPool.computeIfAbsent(sizeKey(pixmap.getWidth(), pixmap.getHeight()), k -> new ConcurrentLinkedQueue<>()).add(pixmap);
+        }
+    }
+
+    // Wait for all images to be written, and release all resources
+    void dispose() {
+        encoders.shutdown();
+        try {
+            encoders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (ConcurrentLinkedQueue<Pixmap> pool : pixmapPool.values()) {
+            for (Pixmap pixmap : pool) pixmap.dispose();
+        }
+        pixmapPool.clear();
+        for (PixmapIO.PNG png : allPngWriters) png.dispose();
+        allPngWriters.clear();
+        sb.dispose();
+        for (FrameBuffer fbo : frameBuffers.values()) {
+            fbo.dispose();
+        }
+        frameBuffers.clear();
+    }
+}
@@ -0,0 +1,278 @@
+package sts_exporter;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+// Parsing of the text markup used by FontHelper and GlyphLayout.
+// The text is tokenized once, after that it can be rendered as html, plain text or wiki markup without scanning it again.
+class SmartText {
+    // Token kinds
+    private static final byte TEXT = 0;        // value: end of the text in this.text, it starts where the previous text ended
+    private static final byte SMART_COLOR = 1; // value: color letter, for "#y" style tags that end at the end of the word
+    private static final byte COLOR = 2;       // value: index in colorNames, for "[color]" tags
+    private static final byte CLOSE = 3;
+
+    private final String text; // all literal text, without markup
+    private final byte[] kinds;
+    private final int[] values;
+    private final String[] colorNames;
+
+    private SmartText(String text, byte[] kinds, int[] values, String[] colorNames) {
+        this.text = text;
+        this.kinds = kinds;
+        this.values = values;
+        this.colorNames = colorNames;
+    }
+
+    private static final ThreadLocal<StringBuilder> outBuffer = ThreadLocal.withInitial(StringBuilder::new);
+    private static final ThreadLocal<Tokens> tokenBuffer = ThreadLocal.withInitial(Tokens::new);
+
+    // Growable token list, reused for every parse on the same thread
+    private static class Tokens {
+        byte[] kinds = new byte[16];
+        int[] values = new int[16];
+        String[] colorNames = new String[4];
+        int size, colors;
+        StringBuilder text = new StringBuilder();
+        int textEnd; // end of the last TEXT token
+
+        void reset() {
+            size = colors = textEnd = 0;
+            text.setLength(0);
+        }
+
+        private void add(byte kind, int value) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            kinds[size] = kind;
+            values[size] = value;
+            size++;
+        }
+
+        // Text appended since the last token becomes a token of its own
+        void flushText() {
+            if (text.length() > textEnd) {
+                textEnd = text.length();
+                add(TEXT, textEnd);
+            }
+        }
+
+        void tag(byte kind, int value) {
+            flushText();
+            add(kind, value);
+        }
+
+        void color(String name) {
+            if (colors == colorNames.length) colorNames = Arrays.copyOf(colorNames, 2 * colors);
+            colorNames[colors] = name;
+            tag(COLOR, colors++);
+        }
+
+        SmartText build() {
+            flushText();
+            return new SmartText(text.toString(), Arrays.copyOf(kinds, size), Arrays.copyOf(values, size), Arrays.copyOf(colorNames, colors));
+        }
+    }
+
+    // Parse "smart text" from FontHelper
+    // @param smart FontHelper.renderSmartText escapes
+    // @param markup GlyphLayout color markup
+    // @param isColor is the given name a valid color for GlyphLayout?
+    static SmartText parse(String string, boolean smart, boolean markup, Predicate<String> isColor) {
+        Tokens out = tokenBuffer.get();
+        out.reset();
+        if (string == null) return out.build();
+        StringBuilder text = out.text;
+        boolean space = false; // should we insert a space?
+        boolean wordStart = true;
+        int wordTags = 0; // number of tags that close at the end of the word
+        int openTags = 0;
+        for (int pos = 0; pos < string.length();) {
+            char c = string.charAt(pos);
+            if (c == ' ') {
+                while (wordTags > 0) {
+                    wordTags--; openTags--;
+                    out.tag(CLOSE, 0);
+                }
+                pos++;
+                wordStart = true;
+                space = true;
+            } else if (c == '\n' || c == '\t') {
+                while (wordTags > 0) {
+                    wordTags--; openTags--;
+                    out.tag(CLOSE, 0);
+                }
+                pos++;
+                wordStart = true;
+                space = false;
+            } else if (smart && wordStart && string.startsWith("NL ",pos)) {
+                text.append('\n');
+                pos += 3;
+                space = false;
+            } else if (smart && wordStart && string.startsWith("TAB ",pos)) {
+                text.append('\t');
+                pos += 4;
+                space = false;
+            } else if (smart && wordStart && c == '#' && pos+1 < string.length()) {
+                if (space) {
+                    text.append(' ');
+                    space = false;
+                }
+                out.tag(SMART_COLOR, string.charAt(pos+1));
+                pos += 2;
+                openTags++;
+                wordTags++;
+            } else if (markup && c == '[' && pos+1 < string.length() && string.charAt(pos+1) == '[') {
+                // escaped [
+                if (space) {
+                    text.append(' ');
+                    space = false;
+                }
+                wordStart = false;
+                text.append(c);
+                pos += 2;
+            } else if (markup && c == '[' && pos + 1 < string.length()) {
+                if (space) {
+                    text.append(' ');
+                    space = false;
+                }
+                int end = string.indexOf(']',pos);
+                if (end == -1 || (end == pos+1 && openTags == 0) || (end == pos+2)) {
+                    // no closing bracket, or an energy orb like [R]
+                    wordStart = false;
+                    text.append(c);
+                    pos++;
+                } else if (end == pos+1) {
+                    if (openTags > 0) {
+                        if (wordTags > 0) wordTags--;
+                        openTags--;
+                        out.tag(CLOSE, 0);
+                    }
+                    pos = end + 1;
+                } else {
+                    String colorName = string.substring(pos+1,end);
+                    if (colorName.charAt(0) != '#' && !isColor.test(colorName)) {
+                        // not a valid color, ignore
+                        wordStart = false;
+                        text.append(c);
+                        pos++;
+                    } else {
+                        out.color(colorName);
+                        openTags++;
+                        if (smart || wordTags > 0) {
+                            // note: FontHelper uses separate calls to GlyphLayout.setText, so each word is rendered independently, as a result all tags end at word boundaries
+                            // note2: If we are already using wordTags, then also close this tag at the end of the word
+                            wordTags++;
+                        }
+                        pos = end + 1;
+                    }
+                }
+            } else {
+                if (space) {
+                    text.append(' ');
+                    space = false;
+                }
+                wordStart = false;
+                text.append(c);
+                pos++;
+            }
+        }
+        while (openTags > 0) {
+            openTags--;
+            out.tag(CLOSE, 0);
+        }
+        return out.build();
+    }
+
+    // Old interface, parse and render in one go
+    // @param html HTML or plain text output
+    static String parseSmartText(String string, boolean smart, boolean markup, boolean html, Predicate<String> isColor) {
+        SmartText text = parse(string, smart, markup, isColor);
+        return html ? text.toHTML() : text.toPlain();
+    }
+
+    String toPlain() {
+        return text;
+    }
+
+    String toHTML() {
+        StringBuilder out = outBuffer.get();
+        out.setLength(0);
+        int textStart = 0;
+        for (int i = 0; i < kinds.length; ++i) {
+            switch (kinds[i]) {
+                case TEXT:
+                    for (int j = textStart; j < values[i]; ++j) {
+                        char c = text.charAt(j);
+                        if (c == '<') {
+                            out.append("&lt;");
+                        } else if (c == '>') {
+                            out.append("&gt;");
+                        } else if (c == '&') {
+                            out.append("&amp;");
+                        } else {
+                            out.append(c);
+                        }
+                    }
+                    textStart = values[i];
+                    break;
+                case SMART_COLOR:
+                    out.append("<span class=\"color-").append((char)values[i]).append("\">");
+                    break;
+                case COLOR:
+                    out.append("<span style=\"color:").append(colorNames[values[i]]).append("\">");
+                    break;
+                default:
+                    out.append("</span>");
+            }
+        }
+        return out.toString();
+    }
+
+    // Keywords (highlighted with "#y") become links, other colors are dropped
+    String toWiki() {
+        StringBuilder out = outBuffer.get();
+        out.setLength(0);
+        int textStart = 0;
+        // positions in out where the open links start, links can't be nested, so only the outermost one counts
+        int depth = 0, linkDepth = -1, linkStart = 0;
+        for (int i = 0; i < kinds.length; ++i) {
+            switch (kinds[i]) {
+                case TEXT:
+                    out.append(text, textStart, values[i]);
+                    textStart = values[i];
+                    break;
+                case SMART_COLOR:
+                case COLOR:
+                    if (kinds[i] == SMART_COLOR && values[i] == 'y' && linkDepth < 0) {
+                        linkDepth = depth;
+                        linkStart = out.length();
+                    }
+                    depth++;
+                    break;
+                default:
+                    depth--;
+                    if (depth == linkDepth) {
+                        closeLink(out, linkStart);
+                        linkDepth = -1;
+                    }
+            }
+        }
+        return out.toString();
+    }
+
+    // Surround out[start..] with [[ ]], trailing punctuation goes after the link
+    private static void closeLink(StringBuilder out, int start) {
+        int end = out.length();
+        while (end > start && isPunctuation(out.charAt(end - 1))) end--;
+        if (end == start) return;
+        out.insert(end, "]]");
+        out.insert(start, "[[");
+    }
+
+    private static boolean isPunctuation(char c) {
+        return c == '.' || c == ',' || c == ':' || c == ';' || c == '!' || c == '?';
+    }
+}
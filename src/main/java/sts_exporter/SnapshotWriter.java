@@ -0,0 +1,73 @@
+package sts_exporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import sts_exporter.snapshot.SnapshotBuilder;
+
+// Writes the collected items as a binary snapshot, see SnapshotFormat for the layout.
+// This maps the export data to records, SnapshotBuilder does the encoding.
+class SnapshotWriter {
+    private final SnapshotBuilder snapshot = new SnapshotBuilder();
+    private final IdentityHashMap<ModExportData,Integer> modIndex = new IdentityHashMap<>();
+
+    SnapshotWriter(List<ModExportData> mods, List<CardExportData> cards, List<RelicExportData> relics, List<PotionExportData> potions,
+                   List<CreatureExportData> creatures, List<KeywordExportData> keywords) {
+        for (ModExportData mod : mods) addMod(mod);
+        for (CardExportData card : cards) addCard(card);
+        for (RelicExportData relic : relics) addRelic(relic);
+        for (PotionExportData potion : potions) addPotion(potion);
+        for (CreatureExportData creature : creatures) addCreature(creature);
+        for (KeywordExportData keyword : keywords) addKeyword(keyword);
+    }
+
+    private static String path(ExportPath path) {
+        return path == null ? null : path.relative;
+    }
+
+    private int mod(ModExportData mod) {
+        Integer index = modIndex.get(mod);
+        return index == null ? -1 : index;
+    }
+
+    private void addMod(ModExportData mod) {
+        String authors = mod.info == null || mod.info.Authors == null ? null : String.join(", ", mod.info.Authors);
+        String description = mod.info == null ? null : mod.info.Description;
+        modIndex.put(mod, snapshot.addMod(mod.id, mod.name, mod.version, authors, description));
+    }
+
+    private void addCard(CardExportData card) {
+        int base = addCard(card, -1);
+        if (card.upgrade != null) {
+            addCard(card.upgrade, base);
+        }
+    }
+
+    private int addCard(CardExportData card, int base) {
+        return snapshot.addCard(mod(card.mod), card.card.cardID, card.name, card.color, card.rarity, card.type, card.cost, card.text,
+            card.block, card.damage, card.magicNumber, path(card.image), base);
+    }
+
+    private void addRelic(RelicExportData relic) {
+        snapshot.addRelic(mod(relic.mod), relic.relic.relicId, relic.name, relic.tier, relic.pool,
+            relic.poolColor == null ? null : relic.poolColor.name(), relic.descriptionPlain, relic.flavorTextPlain, path(relic.image));
+    }
+
+    private void addPotion(PotionExportData potion) {
+        snapshot.addPotion(mod(potion.mod), potion.id, potion.name, potion.rarity, potion.descriptionPlain, path(potion.image));
+    }
+
+    private void addCreature(CreatureExportData creature) {
+        snapshot.addCreature(mod(creature.mod), creature.creature.id, creature.name, creature.type, creature.minHP, creature.maxHP, path(creature.image));
+    }
+
+    private void addKeyword(KeywordExportData keyword) {
+        snapshot.addKeyword(mod(keyword.mod), keyword.name, keyword.descriptionPlain, keyword.names);
+    }
+
+    void write(OutputStream stream) throws IOException {
+        snapshot.write(stream);
+    }
+}
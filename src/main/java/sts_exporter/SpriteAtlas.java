@@ -0,0 +1,186 @@
+package sts_exporter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+
+// Packs images of the same size into a few large sheets, so a page loads a handful of files instead of one per item.
+// Sprites are laid out on a uniform grid, in the order they are added.
+//
+// The positions are assigned before anything is rendered, because the templates need them.
+// The rendered images are copied into the sheet from the encoder threads, and a sheet is written as soon as it is complete.
+class SpriteAtlas {
+    final String name;
+    final int cellWidth, cellHeight, columns, rows;
+    private final ExportHelper export;
+    private final ModExportData mod;
+    private final int pngCompression;
+    private final ExportStats imageStats;
+    final ArrayList<Sheet> sheets = new ArrayList<>();
+
+    SpriteAtlas(ExportHelper export, ModExportData mod, String name, int cellWidth, int cellHeight, int columns, int rows) {
+        this.export = export;
+        this.mod = mod;
+        this.name = name;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.columns = columns;
+        this.rows = rows;
+        // sheets can be written after the render context is gone, so they have their own png writer
+        this.pngCompression = export.png_compression;
+        this.imageStats = export.metrics.imageStats;
+    }
+
+    class Sheet {
+        public final ExportPath path;
+        final ArrayList<Sprite> sprites = new ArrayList<>();
+        private final StringBuilder hash = new StringBuilder();
+        private boolean dirty = true;
+        private Pixmap pixmap;
+        private int drawn;
+
+        Sheet(int index) {
+            this.path = export.exportPath(mod, "atlas", name + "-" + index, ".png");
+        }
+
+        public int getWidth() {
+            return cellWidth * Math.min(columns, sprites.size());
+        }
+
+        public int getHeight() {
+            return cellHeight * ((sprites.size() + columns - 1) / columns);
+        }
+
+        // Called from the encoder threads
+        private synchronized void draw(Sprite sprite, Pixmap image) {
+            // an item can be rendered again while its sheet is unchanged, for example when one of its files is missing
+            if (!dirty) return;
+            if (pixmap == null) {
+                pixmap = new Pixmap(getWidth(), getHeight(), Pixmap.Format.RGBA8888);
+                pixmap.setFilter(Pixmap.Filter.BiLinear);
+            }
+            pixmap.drawPixmap(image, 0, 0, image.getWidth(), image.getHeight(), sprite.x, sprite.y, sprite.width, sprite.height);
+            if (++drawn == sprites.size()) write();
+        }
+
+        // Write a sheet that is missing some images, because they failed to render
+        private synchronized void finish() {
+            if (pixmap == null) return;
+            Exporter.logger.warn("Sprite sheet " + path.relative + " is missing " + (sprites.size() - drawn) + " images");
+            try {
+                write();
+            } catch (Exception e) {
+                Exporter.logger.error("Error while writing sprite sheet", e);
+            }
+        }
+
+        private void write() {
+            PixmapIO.PNG png = new PixmapIO.PNG();
+            try {
+                png.setFlipY(false);
+                png.setCompression(pngCompression);
+                RenderContext.writePNG(png, imageStats, "sprite sheet", path.absolute, pixmap);
+            } catch (RuntimeException e) {
+                export.manifest.failed(path.absolute);
+                throw e;
+            } finally {
+                png.dispose();
+                pixmap.dispose();
+                pixmap = null;
+            }
+        }
+    }
+
+    class Sprite {
+        public final Sheet sheet;
+        public final String image; // the separate image that this sprite stands in for
+        public final int x, y, width, height;
+
+        Sprite(Sheet sheet, String image, int x, int y) {
+            this.sheet = sheet;
+            this.image = image;
+            this.x = x;
+            this.y = y;
+            this.width = cellWidth;
+            this.height = cellHeight;
+        }
+
+        // If the sheet is rendered, all of its sprites have to be rendered, otherwise the item can be skipped when it didn't change
+        boolean mustRender() {
+            return sheet.dirty;
+        }
+
+        // Copy a rendered image into the sheet, scaling it to the size of the sprite
+        void draw(Pixmap image) {
+            sheet.draw(this, image);
+        }
+
+        // Inline style for showing the sprite in a page
+        // @param root path from the page to the export root
+        public String css(String root) {
+            return "background-image:url(" + root + sheet.path.relative + ");background-position:" + offset(x) + " " + offset(y) + ";width:" + width + "px;height:" + height + "px";
+        }
+
+        private String offset(int pos) {
+            return pos == 0 ? "0" : "-" + pos + "px";
+        }
+    }
+
+    // Assign a position to an image
+    // @param image name of the image, for the index
+    // @param hash render hash of the item, the sheet is written when any of its items changed
+    Sprite add(String image, String hash) {
+        Sheet sheet = sheets.isEmpty() ? null : sheets.get(sheets.size() - 1);
+        if (sheet == null || sheet.sprites.size() == columns * rows) {
+            sheet = new Sheet(sheets.size());
+            sheets.add(sheet);
+        }
+        int i = sheet.sprites.size();
+        Sprite sprite = new Sprite(sheet, image, (i % columns) * cellWidth, (i / columns) * cellHeight);
+        sheet.sprites.add(sprite);
+        sheet.hash.append(image).append('\t').append(hash).append('\n');
+        return sprite;
+    }
+
+    // Decide which sheets need to be written, before rendering any images
+    void checkManifest(ExportManifest manifest) {
+        for (Sheet sheet : sheets) {
+            sheet.dirty = !manifest.unchanged(sheet.path.relative, ExportManifest.hash(sheet.hash), sheet.path);
+            if (sheet.dirty) sheet.path.mkdir();
+        }
+    }
+
+    // Call after all images are rendered and encoded
+    void finish() {
+        for (Sheet sheet : sheets) sheet.finish();
+    }
+
+    // Coordinates of all sprites, so other tools can use the sheets
+    void toJson(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.property("name", name);
+        out.property("spriteWidth", cellWidth);
+        out.property("spriteHeight", cellHeight);
+        out.name("sheets").beginArray();
+        for (Sheet sheet : sheets) {
+            out.beginObject();
+            out.property("file", sheet.path.relativeToMod);
+            out.property("width", sheet.getWidth());
+            out.property("height", sheet.getHeight());
+            out.name("sprites").beginArray();
+            for (Sprite sprite : sheet.sprites) {
+                out.beginObject();
+                out.property("image", sprite.image);
+                out.property("x", sprite.x);
+                out.property("y", sprite.y);
+                out.endObject();
+            }
+            out.endArray();
+            out.endObject();
+        }
+        out.endArray();
+        out.endObject();
+    }
+}
@@ -0,0 +1,42 @@
+package sts_exporter.snapshot;
+
+import sts_exporter.snapshot.SnapshotFormat.Card;
+
+// A card in a snapshot, with the same fields as the exporter's CardExportData.
+// Views are flyweights: use at() to move the same view to another record, values are read from the snapshot on every call.
+public final class CardView {
+    private final SnapshotReader reader;
+    private final SnapshotReader.Table table;
+    private int record;
+
+    CardView(SnapshotReader reader, int record) {
+        this.reader = reader;
+        this.table = reader.cards();
+        at(record);
+    }
+
+    public CardView at(int record) {
+        if (record < 0 || record >= table.size()) throw new IndexOutOfBoundsException("Card " + record + " of " + table.size());
+        this.record = record;
+        return this;
+    }
+
+    public int record()         { return record; }
+    public String mod()         { return reader.modId(table.getInt(record, Card.MOD)); }
+    public String id()          { return table.getString(record, Card.ID); }
+    public String name()        { return table.getString(record, Card.NAME); }
+    public String color()       { return table.getString(record, Card.COLOR); }
+    public String rarity()      { return table.getString(record, Card.RARITY); }
+    public String type()        { return table.getString(record, Card.TYPE); }
+    public String cost()        { return table.getString(record, Card.COST); }
+    public String text()        { return table.getString(record, Card.TEXT); }
+    public int block()          { return table.getInt(record, Card.BLOCK); }
+    public int damage()         { return table.getInt(record, Card.DAMAGE); }
+    public int magicNumber()    { return table.getInt(record, Card.MAGIC_NUMBER); }
+    public String image()       { return table.getString(record, Card.IMAGE); }
+    public boolean isUpgraded() { return table.getInt(record, Card.BASE) >= 0; }
+    // record of the upgraded card, or -1
+    public int upgrade()        { return table.getInt(record, Card.UPGRADE); }
+    // for upgraded cards: record of the card that was upgraded, otherwise -1
+    public int base()           { return table.getInt(record, Card.BASE); }
+}
@@ -0,0 +1,31 @@
+package sts_exporter.snapshot;
+
+import sts_exporter.snapshot.SnapshotFormat.Potion;
+
+// A potion in a snapshot, with the same fields as the exporter's PotionExportData.
+// Views are flyweights: use at() to move the same view to another record.
+public final class PotionView {
+    private final SnapshotReader reader;
+    private final SnapshotReader.Table table;
+    private int record;
+
+    PotionView(SnapshotReader reader, int record) {
+        this.reader = reader;
+        this.table = reader.potions();
+        at(record);
+    }
+
+    public PotionView at(int record) {
+        if (record < 0 || record >= table.size()) throw new IndexOutOfBoundsException("Potion " + record + " of " + table.size());
+        this.record = record;
+        return this;
+    }
+
+    public int record()         { return record; }
+    public String mod()         { return reader.modId(table.getInt(record, Potion.MOD)); }
+    public String id()          { return table.getString(record, Potion.ID); }
+    public String name()        { return table.getString(record, Potion.NAME); }
+    public String rarity()      { return table.getString(record, Potion.RARITY); }
+    public String description() { return table.getString(record, Potion.DESCRIPTION); }
+    public String image()       { return table.getString(record, Potion.IMAGE); }
+}
@@ -0,0 +1,35 @@
+package sts_exporter.snapshot;
+
+import sts_exporter.snapshot.SnapshotFormat.Relic;
+
+// A relic in a snapshot, with the same fields as the exporter's RelicExportData.
+// Views are flyweights: use at() to move the same view to another record.
+public final class RelicView {
+    private final SnapshotReader reader;
+    private final SnapshotReader.Table table;
+    private int record;
+
+    RelicView(SnapshotReader reader, int record) {
+        this.reader = reader;
+        this.table = reader.relics();
+        at(record);
+    }
+
+    public RelicView at(int record) {
+        if (record < 0 || record >= table.size()) throw new IndexOutOfBoundsException("Relic " + record + " of " + table.size());
+        this.record = record;
+        return this;
+    }
+
+    public int record()         { return record; }
+    public String mod()         { return reader.modId(table.getInt(record, Relic.MOD)); }
+    public String id()          { return table.getString(record, Relic.ID); }
+    public String name()        { return table.getString(record, Relic.NAME); }
+    public String tier()        { return table.getString(record, Relic.TIER); }
+    public String pool()        { return table.getString(record, Relic.POOL); }
+    // name of the CardColor enum value, or null for shared relics
+    public String poolColor()   { return table.getString(record, Relic.POOL_COLOR); }
+    public String description() { return table.getString(record, Relic.DESCRIPTION); }
+    public String flavorText()  { return table.getString(record, Relic.FLAVOR_TEXT); }
+    public String image()       { return table.getString(record, Relic.IMAGE); }
+}
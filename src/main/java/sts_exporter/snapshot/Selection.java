@@ -0,0 +1,46 @@
+package sts_exporter.snapshot;
+
+import java.nio.ByteBuffer;
+
+// A list of record indexes, the result of a query on a SnapshotReader.
+// This is a view of an index in the mapped file, nothing is copied.
+public final class Selection {
+    static final Selection EMPTY = new Selection(ByteBuffer.allocate(0), 0, 0);
+
+    private final ByteBuffer buffer;
+    private final int start, size;
+
+    Selection(ByteBuffer buffer, int start, int size) {
+        this.buffer = buffer;
+        this.start = start;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Record index of the i-th item
+    public int get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Item " + i + " of " + size);
+        return buffer.getInt(start + 4 * i);
+    }
+
+    // At most limit items, starting at offset
+    public Selection page(int offset, int limit) {
+        if (offset < 0 || limit < 0) throw new IllegalArgumentException("Negative page offset or limit");
+        int from = Math.min(offset, size);
+        int count = Math.min(limit, size - from);
+        return new Selection(buffer, start + 4 * from, count);
+    }
+
+    public int[] toArray() {
+        int[] out = new int[size];
+        for (int i = 0; i < size; ++i) out[i] = get(i);
+        return out;
+    }
+}
@@ -0,0 +1,179 @@
+package sts_exporter.snapshot;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+// Collects records and writes them as a snapshot, see SnapshotFormat for the layout.
+// The add methods return the record index, for referring to the record from other records.
+public final class SnapshotBuilder {
+    // A section with fixed width records
+    private static class Table {
+        final int section, fields;
+        int[] data = new int[64];
+        int size = 0;
+
+        Table(int section, int fields) {
+            this.section = section;
+            this.fields = fields;
+        }
+
+        int add(int... record) {
+            if (record.length != fields) throw new IllegalArgumentException("Wrong number of fields in snapshot record");
+            if ((size + 1) * fields > data.length) data = Arrays.copyOf(data, Math.max(2 * data.length, (size + 1) * fields));
+            System.arraycopy(record, 0, data, size * fields, fields);
+            return size++;
+        }
+
+        int get(int record, int field) {
+            return data[record * fields + field];
+        }
+    }
+
+    private final HashMap<String,Integer> stringIndex = new HashMap<>();
+    private final ArrayList<byte[]> strings = new ArrayList<>();
+    private final ArrayList<String> stringValues = new ArrayList<>();
+    private final Table mods = new Table(SnapshotFormat.MODS, SnapshotFormat.Mod.FIELDS);
+    private final Table cards = new Table(SnapshotFormat.CARDS, SnapshotFormat.Card.FIELDS);
+    private final Table relics = new Table(SnapshotFormat.RELICS, SnapshotFormat.Relic.FIELDS);
+    private final Table potions = new Table(SnapshotFormat.POTIONS, SnapshotFormat.Potion.FIELDS);
+    private final Table creatures = new Table(SnapshotFormat.CREATURES, SnapshotFormat.Creature.FIELDS);
+    private final Table keywords = new Table(SnapshotFormat.KEYWORDS, SnapshotFormat.Keyword.FIELDS);
+    private final Table keywordAliases = new Table(SnapshotFormat.KEYWORD_ALIASES, SnapshotFormat.KeywordAlias.FIELDS);
+
+    private int string(String s) {
+        if (s == null) return -1;
+        return stringIndex.computeIfAbsent(s, x -> {
+            strings.add(x.getBytes(StandardCharsets.UTF_8));
+            stringValues.add(x);
+            return strings.size() - 1;
+        });
+    }
+
+    public int addMod(String id, String name, String version, String authors, String description) {
+        return mods.add(string(id), string(name), string(version), string(authors), string(description));
+    }
+
+    // @param mod record index of the mod, or -1
+    // @param base for an upgraded card: record index of the card that was upgraded, otherwise -1
+    public int addCard(int mod, String id, String name, String color, String rarity, String type, String cost, String text,
+                       int block, int damage, int magicNumber, String image, int base) {
+        int record = cards.add(mod, string(id), string(name), string(color), string(rarity), string(type), string(cost), string(text),
+            block, damage, magicNumber, -1, base, string(image));
+        if (base >= 0) cards.data[base * cards.fields + SnapshotFormat.Card.UPGRADE] = record;
+        return record;
+    }
+
+    public int addRelic(int mod, String id, String name, String tier, String pool, String poolColor, String description, String flavorText, String image) {
+        return relics.add(mod, string(id), string(name), string(tier), string(pool), string(poolColor), string(description), string(flavorText), string(image));
+    }
+
+    public int addPotion(int mod, String id, String name, String rarity, String description, String image) {
+        return potions.add(mod, string(id), string(name), string(rarity), string(description), string(image));
+    }
+
+    public int addCreature(int mod, String id, String name, String type, int minHP, int maxHP, String image) {
+        return creatures.add(mod, string(id), string(name), string(type), minHP, maxHP, string(image));
+    }
+
+    public int addKeyword(int mod, String name, String description, List<String> aliases) {
+        int aliasStart = keywordAliases.size;
+        for (String alias : aliases) {
+            keywordAliases.add(string(alias));
+        }
+        return keywords.add(mod, string(name), string(description), aliasStart, keywordAliases.size - aliasStart);
+    }
+
+    // Record indexes, sorted by the string in the given field
+    private Table idIndex(int section, Table table, int field, IntPredicate include) {
+        ArrayList<Integer> records = new ArrayList<>();
+        for (int i = 0; i < table.size; ++i) {
+            if (include.test(i) && table.get(i, field) >= 0) records.add(i);
+        }
+        records.sort(Comparator.comparing(i -> stringValues.get(table.get(i, field))));
+        Table index = new Table(section, 1);
+        for (int i : records) index.add(i);
+        return index;
+    }
+
+    // Records grouped by the value of a field, see SnapshotFormat
+    private Table groupIndex(int section, Table table, int field) {
+        LinkedHashMap<Integer,ArrayList<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < table.size; ++i) {
+            groups.computeIfAbsent(table.get(i, field), k -> new ArrayList<>()).add(i);
+        }
+        Table index = new Table(section, 1);
+        index.add(groups.size());
+        for (int key : groups.keySet()) index.add(key);
+        int start = 0;
+        index.add(start);
+        for (ArrayList<Integer> members : groups.values()) {
+            start += members.size();
+            index.add(start);
+        }
+        for (ArrayList<Integer> members : groups.values()) {
+            for (int i : members) index.add(i);
+        }
+        return index;
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        Table[] tables = {mods, cards, relics, potions, creatures, keywords, keywordAliases,
+            idIndex(SnapshotFormat.CARD_IDS, cards, SnapshotFormat.Card.ID, i -> cards.get(i, SnapshotFormat.Card.BASE) < 0),
+            idIndex(SnapshotFormat.RELIC_IDS, relics, SnapshotFormat.Relic.ID, i -> true),
+            idIndex(SnapshotFormat.POTION_IDS, potions, SnapshotFormat.Potion.ID, i -> true),
+            groupIndex(SnapshotFormat.CARDS_BY_MOD, cards, SnapshotFormat.Card.MOD),
+            groupIndex(SnapshotFormat.CARDS_BY_COLOR, cards, SnapshotFormat.Card.COLOR),
+            groupIndex(SnapshotFormat.CARDS_BY_RARITY, cards, SnapshotFormat.Card.RARITY),
+            groupIndex(SnapshotFormat.RELICS_BY_MOD, relics, SnapshotFormat.Relic.MOD),
+            groupIndex(SnapshotFormat.RELICS_BY_POOL, relics, SnapshotFormat.Relic.POOL),
+            groupIndex(SnapshotFormat.RELICS_BY_TIER, relics, SnapshotFormat.Relic.TIER),
+            groupIndex(SnapshotFormat.POTIONS_BY_MOD, potions, SnapshotFormat.Potion.MOD),
+            groupIndex(SnapshotFormat.POTIONS_BY_RARITY, potions, SnapshotFormat.Potion.RARITY),
+        };
+        int sections = tables.length + 1;
+        // header
+        out.writeInt(SnapshotFormat.MAGIC);
+        out.writeInt(SnapshotFormat.VERSION);
+        out.writeInt(sections);
+        // section table, the string table goes last, because it is not a multiple of 4 bytes
+        int offset = SnapshotFormat.HEADER_SIZE + sections * SnapshotFormat.SECTION_ENTRY_SIZE;
+        for (Table table : tables) {
+            out.writeInt(table.section);
+            out.writeInt(offset);
+            out.writeInt(table.size);
+            out.writeInt(table.fields * 4);
+            offset += table.size * table.fields * 4;
+        }
+        out.writeInt(SnapshotFormat.STRINGS);
+        out.writeInt(offset);
+        out.writeInt(strings.size());
+        out.writeInt(0);
+        // records
+        for (Table table : tables) {
+            for (int i = 0; i < table.size * table.fields; ++i) {
+                out.writeInt(table.data[i]);
+            }
+        }
+        // strings
+        int stringOffset = 0;
+        out.writeInt(stringOffset);
+        for (byte[] s : strings) {
+            stringOffset += s.length;
+            out.writeInt(stringOffset);
+        }
+        for (byte[] s : strings) {
+            out.write(s);
+        }
+        out.flush();
+    }
+}
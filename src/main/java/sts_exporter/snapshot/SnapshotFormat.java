@@ -0,0 +1,98 @@
+package sts_exporter.snapshot;
+
+// Layout of the binary snapshot (items.snapshot) written by the exporter.
+//
+// All numbers are 32 bit big endian ints.
+//   header:        MAGIC, VERSION, number of sections
+//   section table: for each section: id, byte offset, number of records, bytes per record
+//   sections:      records of fixed width, every field is an int.
+//                  Fields referring to a string are an index in the STRINGS section, or -1 for null.
+//                  Fields referring to another item are a record index in that section, or -1.
+//   STRINGS:       (count+1) byte offsets relative to the end of the offset table, followed by UTF-8 data.
+//
+// Index sections have records of a single int:
+//   *_IDS:         record indexes, sorted by the id string, for binary search. Upgraded cards are not included.
+//   *_BY_*:        groups of records with the same value in a field, in record order:
+//                  number of groups G, G group keys (the field value), G+1 start positions, members.
+//                  Start positions are relative to the first member.
+//
+// New fields are only ever added at the end of a record, readers should use the record size from the section table.
+public final class SnapshotFormat {
+    private SnapshotFormat() {}
+
+    public static final int MAGIC = 0x53545358; // "STSX"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 12;
+    public static final int SECTION_ENTRY_SIZE = 16;
+
+    // Section ids
+    public static final int STRINGS = 1;
+    public static final int MODS = 2;
+    public static final int CARDS = 3;
+    public static final int RELICS = 4;
+    public static final int POTIONS = 5;
+    public static final int CREATURES = 6;
+    public static final int KEYWORDS = 7;
+    public static final int KEYWORD_ALIASES = 8;
+    // Indexes
+    public static final int CARD_IDS = 16;
+    public static final int RELIC_IDS = 17;
+    public static final int POTION_IDS = 18;
+    public static final int CARDS_BY_MOD = 32;
+    public static final int CARDS_BY_COLOR = 33;
+    public static final int CARDS_BY_RARITY = 34;
+    public static final int RELICS_BY_MOD = 35;
+    public static final int RELICS_BY_POOL = 36;
+    public static final int RELICS_BY_TIER = 37;
+    public static final int POTIONS_BY_MOD = 38;
+    public static final int POTIONS_BY_RARITY = 39;
+
+    // Fields of the records in each section
+
+    public static final class Mod {
+        private Mod() {}
+        public static final int ID = 0, NAME = 1, VERSION = 2, AUTHORS = 3, DESCRIPTION = 4;
+        public static final int FIELDS = 5;
+    }
+
+    public static final class Card {
+        private Card() {}
+        public static final int MOD = 0, ID = 1, NAME = 2, COLOR = 3, RARITY = 4, TYPE = 5, COST = 6, TEXT = 7;
+        public static final int BLOCK = 8, DAMAGE = 9, MAGIC_NUMBER = 10;
+        public static final int UPGRADE = 11; // the upgraded version of this card
+        public static final int BASE = 12; // for upgraded cards: the card that was upgraded
+        public static final int IMAGE = 13;
+        public static final int FIELDS = 14;
+    }
+
+    public static final class Relic {
+        private Relic() {}
+        public static final int MOD = 0, ID = 1, NAME = 2, TIER = 3, POOL = 4, POOL_COLOR = 5, DESCRIPTION = 6, FLAVOR_TEXT = 7, IMAGE = 8;
+        public static final int FIELDS = 9;
+    }
+
+    public static final class Potion {
+        private Potion() {}
+        public static final int MOD = 0, ID = 1, NAME = 2, RARITY = 3, DESCRIPTION = 4, IMAGE = 5;
+        public static final int FIELDS = 6;
+    }
+
+    public static final class Creature {
+        private Creature() {}
+        public static final int MOD = 0, ID = 1, NAME = 2, TYPE = 3, MIN_HP = 4, MAX_HP = 5, IMAGE = 6;
+        public static final int FIELDS = 7;
+    }
+
+    public static final class Keyword {
+        private Keyword() {}
+        public static final int MOD = 0, NAME = 1, DESCRIPTION = 2;
+        public static final int ALIASES_START = 3, ALIASES_COUNT = 4; // range in the KEYWORD_ALIASES section
+        public static final int FIELDS = 5;
+    }
+
+    public static final class KeywordAlias {
+        private KeywordAlias() {}
+        public static final int NAME = 0;
+        public static final int FIELDS = 1;
+    }
+}
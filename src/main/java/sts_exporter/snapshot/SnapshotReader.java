@@ -0,0 +1,205 @@
+package sts_exporter.snapshot;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.function.IntPredicate;
+
+// Reads a snapshot written by the exporter, see SnapshotFormat for the layout.
+// The file is memory mapped, records and strings are only decoded when they are accessed.
+// Reading is thread safe.
+public final class SnapshotReader {
+    private final ByteBuffer buffer;
+    private final int version;
+    private final HashMap<Integer,Table> tables = new HashMap<>();
+    private final int stringCount;
+    private final int stringOffsets; // position of the string offset table
+    private final int stringData; // position of the string data
+
+    public SnapshotReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < SnapshotFormat.HEADER_SIZE || buffer.getInt(0) != SnapshotFormat.MAGIC) {
+            throw new IOException("Not an sts-exporter snapshot");
+        }
+        this.version = buffer.getInt(4);
+        if (version > SnapshotFormat.VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        int sections = buffer.getInt(8);
+        for (int i = 0; i < sections; ++i) {
+            int entry = SnapshotFormat.HEADER_SIZE + i * SnapshotFormat.SECTION_ENTRY_SIZE;
+            Table table = new Table(buffer.getInt(entry + 4), buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+            tables.put(buffer.getInt(entry), table);
+        }
+        Table strings = tables.get(SnapshotFormat.STRINGS);
+        if (strings == null) throw new IOException("Snapshot has no string table");
+        this.stringCount = strings.size;
+        this.stringOffsets = strings.offset;
+        this.stringData = strings.offset + 4 * (stringCount + 1);
+    }
+
+    // Memory map a snapshot file
+    public static SnapshotReader open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new SnapshotReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int version() {
+        return version;
+    }
+
+    // A section of the snapshot, or null if the snapshot doesn't contain it
+    public Table table(int section) {
+        return tables.get(section);
+    }
+
+    public Table mods()      { return table(SnapshotFormat.MODS); }
+    public Table cards()     { return table(SnapshotFormat.CARDS); }
+    public Table relics()    { return table(SnapshotFormat.RELICS); }
+    public Table potions()   { return table(SnapshotFormat.POTIONS); }
+    public Table creatures() { return table(SnapshotFormat.CREATURES); }
+    public Table keywords()  { return table(SnapshotFormat.KEYWORDS); }
+    public Table keywordAliases() { return table(SnapshotFormat.KEYWORD_ALIASES); }
+
+    public int stringCount() {
+        return stringCount;
+    }
+
+    // String with the given index, or null for -1
+    public String string(int index) {
+        if (index < 0) return null;
+        if (index >= stringCount) throw new IndexOutOfBoundsException("String " + index + " of " + stringCount);
+        int start = stringData + buffer.getInt(stringOffsets + 4 * index);
+        int end = stringData + buffer.getInt(stringOffsets + 4 * (index + 1));
+        ByteBuffer bytes = buffer.duplicate();
+        ((Buffer)bytes).limit(end);
+        ((Buffer)bytes).position(start); // note: cast for compatibility with java 8
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    // Id of the mod with the given record index, or null for -1
+    public String modId(int mod) {
+        return mod < 0 ? null : mods().getString(mod, SnapshotFormat.Mod.ID);
+    }
+
+    // Record index of the mod with the given id, or -1
+    public int findMod(String id) {
+        return scanFor(mods(), SnapshotFormat.Mod.ID, id);
+    }
+
+    // Lookups by id. Upgraded cards are not included, use CardView.upgrade() to get to them.
+    // Returns null if there is no such item.
+
+    public CardView findCard(String id) {
+        int record = findById(SnapshotFormat.CARD_IDS, cards(), SnapshotFormat.Card.ID, id);
+        return record < 0 ? null : new CardView(this, record);
+    }
+
+    public RelicView findRelic(String id) {
+        int record = findById(SnapshotFormat.RELIC_IDS, relics(), SnapshotFormat.Relic.ID, id);
+        return record < 0 ? null : new RelicView(this, record);
+    }
+
+    public PotionView findPotion(String id) {
+        int record = findById(SnapshotFormat.POTION_IDS, potions(), SnapshotFormat.Potion.ID, id);
+        return record < 0 ? null : new PotionView(this, record);
+    }
+
+    // Views for iterating over a Selection, move them with at()
+
+    public CardView card(int record)     { return new CardView(this, record); }
+    public RelicView relic(int record)   { return new RelicView(this, record); }
+    public PotionView potion(int record) { return new PotionView(this, record); }
+
+    // Queries, in export order
+
+    public Selection cardsByMod(String modId)       { return groupByMod(SnapshotFormat.CARDS_BY_MOD, modId); }
+    public Selection cardsByColor(String color)     { return group(SnapshotFormat.CARDS_BY_COLOR, color); }
+    public Selection cardsByRarity(String rarity)   { return group(SnapshotFormat.CARDS_BY_RARITY, rarity); }
+    public Selection relicsByMod(String modId)      { return groupByMod(SnapshotFormat.RELICS_BY_MOD, modId); }
+    public Selection relicsByPool(String pool)      { return group(SnapshotFormat.RELICS_BY_POOL, pool); }
+    public Selection relicsByTier(String tier)      { return group(SnapshotFormat.RELICS_BY_TIER, tier); }
+    public Selection potionsByMod(String modId)     { return groupByMod(SnapshotFormat.POTIONS_BY_MOD, modId); }
+    public Selection potionsByRarity(String rarity) { return group(SnapshotFormat.POTIONS_BY_RARITY, rarity); }
+
+    private int scanFor(Table table, int field, String value) {
+        for (int i = 0; i < table.size; ++i) {
+            if (value.equals(table.getString(i, field))) return i;
+        }
+        return -1;
+    }
+
+    private int findById(int section, Table table, int field, String id) {
+        Table index = table(section);
+        int lo = 0, hi = index.size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int record = index.getInt(mid, 0);
+            int cmp = table.getString(record, field).compareTo(id);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return record;
+        }
+        return -1;
+    }
+
+    private Selection groupByMod(int section, String modId) {
+        int mod = findMod(modId);
+        if (mod < 0) return Selection.EMPTY;
+        return group(section, key -> key == mod);
+    }
+
+    private Selection group(int section, String value) {
+        return group(section, key -> key >= 0 && value.equals(string(key)));
+    }
+
+    private Selection group(int section, IntPredicate matchKey) {
+        Table index = table(section);
+        int groups = index.getInt(0, 0);
+        for (int g = 0; g < groups; ++g) {
+            if (matchKey.test(index.getInt(1 + g, 0))) {
+                int starts = 1 + groups;
+                int first = index.getInt(starts + g, 0);
+                int end = index.getInt(starts + g + 1, 0);
+                int members = index.offset + 4 * (starts + groups + 1 + first);
+                return new Selection(buffer, members, end - first);
+            }
+        }
+        return Selection.EMPTY;
+    }
+
+    // Records of fixed size
+    public final class Table {
+        final int offset, size, recordSize;
+
+        Table(int offset, int size, int recordSize) {
+            this.offset = offset;
+            this.size = size;
+            this.recordSize = recordSize;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int fields() {
+            return recordSize / 4;
+        }
+
+        public int getInt(int record, int field) {
+            if (record < 0 || record >= size) throw new IndexOutOfBoundsException("Record " + record + " of " + size);
+            if (field * 4 >= recordSize) return -1; // field not present in snapshots from older versions
+            return buffer.getInt(offset + record * recordSize + field * 4);
+        }
+
+        public String getString(int record, int field) {
+            return string(getInt(record, field));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package sts_exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import sts_exporter.CardText.TextMode;
+
+// The expected outputs are those of the exporter before the descriptions were aligned with reused buffers,
+// including its quirks like the double space in front of an added line.
+public class CardTextTest {
+    private static final KeywordMatcher KEYWORDS = new KeywordMatcher(Arrays.asList("block", "vulnerable", "exhaust", "energy", "weak"));
+
+    // Check all modes, and that combining them all at once gives the same result as one by one
+    private static void assertCombined(String a, String b, String normal, String wikiData, String wikiFormat) {
+        String[] all = CardText.combineDescriptionsAllModes(a, b, KEYWORDS);
+        assertEquals(normal, all[TextMode.NORMAL_MODE.ordinal()]);
+        assertEquals(wikiData, all[TextMode.WIKI_DATA.ordinal()]);
+        assertEquals(wikiFormat, all[TextMode.WIKI_FORMAT.ordinal()]);
+        for (TextMode mode : TextMode.values()) {
+            assertEquals(mode.toString(), all[mode.ordinal()], CardText.combineDescriptions(a, b, mode, KEYWORDS));
+        }
+    }
+
+    @Test
+    public void combineUpgrade() {
+        assertEquals("1", CardText.combineUpgrade("1", null, TextMode.NORMAL_MODE));
+        assertEquals("1", CardText.combineUpgrade("1", "1", TextMode.WIKI_DATA));
+        assertEquals("1(0)", CardText.combineUpgrade("1", "0", TextMode.NORMAL_MODE));
+        assertEquals("1(0)", CardText.combineUpgrade("1", "0", TextMode.WIKI_FORMAT));
+        assertEquals("[1|0]", CardText.combineUpgrade("1", "0", TextMode.WIKI_DATA));
+    }
+
+    @Test
+    public void unchanged() {
+        assertCombined("Deal !D! damage.", "Deal !D! damage.",
+            "Deal !D! damage.",
+            "Deal !D! damage.",
+            "Deal !D! damage.");
+    }
+
+    @Test
+    public void replacedWords() {
+        assertCombined("Deal 5 damage. Apply 1 Weak.", "Deal 8 damage. Apply 2 Weak.",
+            "Deal 5 (8) damage. Apply 1 (2) Weak.",
+            "Deal [5|8] damage. Apply [1|2] #Weak.",
+            "Deal 5 (8) damage. Apply 1 (2) [[Weak]].");
+    }
+
+    @Test
+    public void addedText() {
+        assertCombined("Gain !B! Block.", "Gain !B! Block. NL Draw 1 card.",
+            "Gain !B! Block.  NL (Draw 1 card.)",
+            "Gain !B! #Block.| NL Draw 1 card.]",
+            "Gain !B! [[Block]].  NL (Draw 1 card.)");
+    }
+
+    @Test
+    public void removedText() {
+        assertCombined("Exhaust. NL Draw 2 cards.", "Draw 2 cards.",
+            "Exhaust. NL (not Exhaust.) NL Draw 2 cards.",
+            "[#Exhaust. NL |] Draw 2 cards.",
+            "[[Exhaust]]. NL (not Exhaust.) NL Draw 2 cards.");
+        assertCombined("Draw 1 card. NL Exhaust.", "Draw 1 card.",
+            "Draw 1 card. NL Exhaust. (not NL Exhaust.)",
+            "Draw 1 card. [ NL #Exhaust.|",
+            "Draw 1 card. NL [[Exhaust]]. (not NL Exhaust.)");
+        assertCombined("Ethereal. NL Gain !B! Block.", "Gain !B! Block.",
+            "Ethereal. NL (not Ethereal.) NL Gain !B! Block.",
+            "[Ethereal. NL |] Gain !B! #Block.",
+            "Ethereal. NL (not Ethereal.) NL Gain !B! [[Block]].");
+    }
+
+    @Test
+    public void plurals() {
+        // plurals are only special outside WIKI_DATA
+        assertCombined("Draw !M! card.", "Draw !M! cards.",
+            "Draw !M! card(s).",
+            "Draw !M! [card|cards].",
+            "Draw !M! card(s).");
+    }
+
+    @Test
+    public void energySymbols() {
+        assertCombined("Gain [R] .", "Gain [R] [R] .",
+            "Gain [R] ([R]).",
+            "Gain <R>| <R>].",
+            "Gain 1 (2) [[Energy]].");
+    }
+
+    @Test
+    public void punctuationIsSeparateWord() {
+        assertCombined("Apply 1 Vulnerable, then Exhaust.", "Apply 2 Vulnerable, then Exhaust.",
+            "Apply 1 (2) Vulnerable, then Exhaust.",
+            "Apply [1|2] #Vulnerable, then #Exhaust.",
+            "Apply 1 (2) [[Vulnerable]], then [[Exhaust]].");
+    }
+
+    @Test
+    public void shorterKeywordWhenLongerIsRejected() {
+        // "Weak Point" crosses into the added text, and can't be marked in WIKI_DATA, but "Weak" can
+        String[] combined = CardText.combineDescriptionsAllModes("Apply 1 Weak.", "Apply 1 Weak Point.",
+            new KeywordMatcher(Arrays.asList("weak", "weak point")));
+        assertEquals("Apply 1 #Weak| Point].", combined[TextMode.WIKI_DATA.ordinal()]);
+        assertEquals("Apply 1 [[Weak]] (Point).", combined[TextMode.WIKI_FORMAT.ordinal()]);
+    }
+}
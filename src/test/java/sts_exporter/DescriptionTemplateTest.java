@@ -0,0 +1,74 @@
+package sts_exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DescriptionTemplateTest {
+    private static final HashMap<String,String> VALUES = new HashMap<>();
+    static {
+        VALUES.put("B", "5");
+        VALUES.put("D", "6");
+        VALUES.put("M", "2");
+        VALUES.put("mymod:Zap", "3");
+    }
+
+    private static String render(String text) {
+        return DescriptionTemplate.parse(text, VALUES::containsKey).render(VALUES::get);
+    }
+
+    @Test
+    public void variables() {
+        assertEquals("Deal 6 damage.", render("Deal !D! damage."));
+        assertEquals("Gain 5 Block. Apply 2 Weak.", render("Gain !B! Block. Apply !M! Weak."));
+        assertEquals("65", render("!D!!B!"));
+        assertEquals("Channel 3 Lightning.", render("Channel !mymod:Zap! Lightning."));
+    }
+
+    @Test
+    public void lineBreaks() {
+        assertEquals("Gain 5 Block.\nExhaust.", render("Gain !B! Block. NL Exhaust."));
+        assertEquals("a\n\nb", render("a NL  NL b"));
+        // only with spaces around it
+        assertEquals("NL a NL", render("NL a NL"));
+        assertEquals("\nNL b", render(" NL NL b"));
+    }
+
+    @Test
+    public void otherExclamationMarks() {
+        assertEquals("Wow! Deal 6 damage!", render("Wow! Deal !D! damage!"));
+        assertEquals("!X! and !!", render("!X! and !!"));
+        assertEquals("!X6", render("!X!D!"));
+        assertEquals("Deal !D", render("Deal !D"));
+        // left to right, so a closing '!' is not reused as an opening one
+        assertEquals("6B6", render("!D!B!D!"));
+    }
+
+    @Test
+    public void missingValue() {
+        DescriptionTemplate template = DescriptionTemplate.parse("Deal !D! damage !M! times.", VALUES::containsKey);
+        assertEquals("Deal !D! damage 2 times.", template.render(key -> key.equals("M") ? "2" : null));
+        // a parsed template can be rendered again with other values
+        assertEquals("Deal 6(9) damage 2 times.", template.render(key -> key.equals("D") ? "6(9)" : VALUES.get(key)));
+    }
+
+    // Same as replacing the variables one after another, which is what the exporter used to do.
+    // That depends on the order of the replacements when variables share an exclamation mark, those texts are skipped.
+    @Test
+    public void sameAsReplace() {
+        String[] pieces = {"!", "B", "D", "M", "X", " NL ", "NL", " ", "a", "!B!", "!D!"};
+        Random random = new Random(12345);
+        for (int n = 0; n < 20000; ++n) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; ++i) text.append(pieces[random.nextInt(pieces.length)]);
+            String expected = text.toString().replace("!B!", "5").replace("!D!", "6").replace("!M!", "2").replace(" NL ", "\n");
+            String reversed = text.toString().replace("!M!", "2").replace("!D!", "6").replace("!B!", "5").replace(" NL ", "\n");
+            if (!expected.equals(reversed)) continue;
+            assertEquals(text.toString(), expected, render(text.toString()));
+        }
+    }
+}
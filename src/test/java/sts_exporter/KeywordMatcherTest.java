@@ -0,0 +1,131 @@
+package sts_exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sts_exporter.CardText.TextMode;
+
+public class KeywordMatcherTest {
+    // Matches as "start-end:keyword"
+    private static List<String> find(List<String> keywords, String text) {
+        ArrayList<String> out = new ArrayList<>();
+        new KeywordMatcher(keywords).find(text, (start, end, keyword) -> out.add(start + "-" + end + ":" + keywords.get(keyword)));
+        return out;
+    }
+
+    @Test
+    public void wholeWordsOnly() {
+        List<String> keywords = Arrays.asList("block", "vulnerable");
+        assertEquals(Arrays.asList("5-10:block"), find(keywords, "Gain Block."));
+        assertEquals(Arrays.asList(), find(keywords, "Gain Blocked. Unblock"));
+        assertEquals(Arrays.asList("0-5:block", "7-17:vulnerable"), find(keywords, "block, Vulnerable"));
+        assertEquals(Arrays.asList("1-6:block"), find(keywords, "[block]"));
+    }
+
+    @Test
+    public void caseInsensitive() {
+        assertEquals(Arrays.asList("0-5:Block", "6-11:Block"), find(Arrays.asList("Block"), "BLOCK block"));
+    }
+
+    @Test
+    public void leftmostLongest() {
+        List<String> keywords = Arrays.asList("strike", "perfected strike", "strike dummy", "lock on", "on");
+        // the longest keyword at a position wins
+        assertEquals(Arrays.asList("0-16:perfected strike"), find(keywords, "Perfected Strike"));
+        assertEquals(Arrays.asList("4-16:strike dummy"), find(keywords, "Use Strike Dummy"));
+        // of overlapping keywords, the one that starts first wins
+        assertEquals(Arrays.asList("0-16:perfected strike"), find(keywords, "Perfected Strike Dummy"));
+        assertEquals(Arrays.asList("0-7:lock on"), find(keywords, "Lock On"));
+        assertEquals(Arrays.asList("0-2:on", "8-15:lock on"), find(keywords, "On your Lock On"));
+        // a longer keyword that doesn't end on a word boundary doesn't hide a shorter one
+        assertEquals(Arrays.asList("0-6:strike"), find(keywords, "Strike Dummyish"));
+    }
+
+    @Test
+    public void failLinks() {
+        // after "abc d" fails on 'x', the matcher has to continue with the "bc d" suffix
+        List<String> keywords = Arrays.asList("abc de", "bc dx", "c");
+        assertEquals(Arrays.asList(), find(keywords, "abc dx"));
+        assertEquals(Arrays.asList("0-6:abc de"), find(keywords, "abc de"));
+        assertEquals(Arrays.asList("0-5:bc dx", "6-7:c"), find(keywords, "bc dx c"));
+    }
+
+    @Test
+    public void rejectedMatches() {
+        List<String> keywords = Arrays.asList("weak", "weak point", "weak point here", "point");
+        KeywordMatcher matcher = new KeywordMatcher(keywords);
+        ArrayList<String> offered = new ArrayList<>();
+        // reject everything longer than one word, shorter keywords at the same start are offered instead
+        matcher.find("Weak Point here", (start, end, keyword) -> {
+            offered.add(start + "-" + end + ":" + keywords.get(keyword));
+            return keywords.get(keyword).indexOf(' ') < 0;
+        });
+        assertEquals(Arrays.asList("0-15:weak point here", "0-10:weak point", "0-4:weak", "5-10:point"), offered);
+        // when all of them are rejected, matching continues inside the rejected text
+        offered.clear();
+        matcher.find("Weak Point", (start, end, keyword) -> {
+            offered.add(start + "-" + end + ":" + keywords.get(keyword));
+            return keywords.get(keyword).equals("point");
+        });
+        assertEquals(Arrays.asList("0-10:weak point", "0-4:weak", "5-10:point"), offered);
+    }
+
+    @Test
+    public void emptyKeywordsAreIgnored() {
+        assertEquals(Arrays.asList("2-3:x"), find(Arrays.asList("", "x"), "a x"));
+        assertEquals(Arrays.asList(), find(Arrays.asList(), "anything"));
+    }
+
+    // Compare with trying every keyword at every position
+    @Test
+    public void sameAsBruteForce() {
+        List<String> keywords = Arrays.asList("a", "ab", "a b", "b a b", "ba", "b", "bab", "a a");
+        String alphabet = "ab  .";
+        Random random = new Random(7);
+        for (int n = 0; n < 20000; ++n) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(16);
+            for (int i = 0; i < length; ++i) text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            assertEquals(text.toString(), bruteForce(keywords, text.toString()), find(keywords, text.toString()));
+        }
+    }
+
+    private static List<String> bruteForce(List<String> keywords, String text) {
+        ArrayList<String> out = new ArrayList<>();
+        for (int start = 0; start < text.length(); ++start) {
+            if (start > 0 && Character.isLetterOrDigit(text.charAt(start - 1))) continue;
+            int best = -1;
+            for (int k = 0; k < keywords.size(); ++k) {
+                String keyword = keywords.get(k);
+                int end = start + keyword.length();
+                if (!text.regionMatches(true, start, keyword, 0, keyword.length())) continue;
+                if (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) continue;
+                if (best < 0 || keyword.length() > keywords.get(best).length()) best = k;
+            }
+            if (best >= 0) {
+                int end = start + keywords.get(best).length();
+                out.add(start + "-" + end + ":" + keywords.get(best));
+                start = end - 1;
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void multiWordKeywordsInCardText() {
+        KeywordMatcher keywords = new KeywordMatcher(Arrays.asList("lock on", "weak"));
+        String[] combined = CardText.combineDescriptionsAllModes("Apply 1 Lock On.", "Apply 2 Lock On.", keywords);
+        assertEquals("Apply 1 (2) [[Lock On]].", combined[TextMode.WIKI_FORMAT.ordinal()]);
+        // only single words can be marked in WIKI_DATA
+        assertEquals("Apply [1|2] Lock On.", combined[TextMode.WIKI_DATA.ordinal()]);
+        // a keyword is not linked when the upgrade changes part of it
+        combined = CardText.combineDescriptionsAllModes("Apply Lock On and Weak.", "Apply Lock Off and Weak.", keywords);
+        assertEquals("Apply Lock On (Off) and [[Weak]].", combined[TextMode.WIKI_FORMAT.ordinal()]);
+    }
+}
@@ -0,0 +1,110 @@
+package sts_exporter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+// The expected html and plain text are those of the exporter before the text was tokenized.
+public class SmartTextTest {
+    private static final Predicate<String> IS_COLOR = name -> name.equals("RED") || name.equals("GOLD");
+
+    private static void assertText(String input, boolean smart, boolean markup, String html, String plain, String wiki) {
+        SmartText text = SmartText.parse(input, smart, markup, IS_COLOR);
+        assertEquals(html, text.toHTML());
+        assertEquals(plain, text.toPlain());
+        assertEquals(wiki, text.toWiki());
+        assertEquals(html, SmartText.parseSmartText(input, smart, markup, true, IS_COLOR));
+        assertEquals(plain, SmartText.parseSmartText(input, smart, markup, false, IS_COLOR));
+    }
+
+    private static void assertSmart(String input, String html, String plain, String wiki) {
+        assertText(input, true, false, html, plain, wiki);
+    }
+
+    private static void assertMarkup(String input, String html, String plain, String wiki) {
+        assertText(input, false, true, html, plain, wiki);
+    }
+
+    @Test
+    public void smartColors() {
+        assertSmart("Deal #r10 damage. NL Apply #b2 #yVulnerable.",
+            "Deal <span class=\"color-r\">10</span> damage.\nApply <span class=\"color-b\">2</span> <span class=\"color-y\">Vulnerable.</span>",
+            "Deal 10 damage.\nApply 2 Vulnerable.",
+            "Deal 10 damage.\nApply 2 [[Vulnerable]].");
+        assertSmart("At the start of your turn, gain #b1 [E] .",
+            "At the start of your turn, gain <span class=\"color-b\">1</span> [E] .",
+            "At the start of your turn, gain 1 [E] .",
+            "At the start of your turn, gain 1 [E] .");
+    }
+
+    @Test
+    public void lineBreaksAndSpaces() {
+        assertSmart("A NL B TAB C", "A\nB\tC", "A\nB\tC", "A\nB\tC");
+        assertSmart("  double  spaces  ", " double spaces", " double spaces", " double spaces");
+        // NL is only special in smart text
+        assertMarkup("A NL B", "A NL B", "A NL B", "A NL B");
+    }
+
+    @Test
+    public void markupColors() {
+        assertMarkup("[RED]Danger[] and [GOLD]gold[] and [#ff0000]hex[]",
+            "<span style=\"color:RED\">Danger</span> and <span style=\"color:GOLD\">gold</span> and <span style=\"color:#ff0000\">hex</span>",
+            "Danger and gold and hex",
+            "Danger and gold and hex");
+        assertText("[GOLD]unclosed", true, true,
+            "<span style=\"color:GOLD\">unclosed</span>",
+            "unclosed",
+            "unclosed");
+    }
+
+    @Test
+    public void notMarkup() {
+        // "[[" is an escaped bracket, unknown colors and energy orbs are literal text
+        assertMarkup("[[not a tag] [UNKNOWN]text[] [R] orb",
+            "[not a tag] [UNKNOWN]text[] [R] orb",
+            "[not a tag] [UNKNOWN]text[] [R] orb",
+            "[not a tag] [UNKNOWN]text[] [R] orb");
+        assertMarkup("a < b & c > d", "a &lt; b &amp; c &gt; d", "a < b & c > d", "a < b & c > d");
+    }
+
+    @Test
+    public void colorsEndAtWordsInSmartText() {
+        // FontHelper renders each word separately, so a color tag ends at the end of the word
+        assertText("[GOLD]Gold words[] #yExhaust.", true, true,
+            "<span style=\"color:GOLD\">Gold</span> words[] <span class=\"color-y\">Exhaust.</span>",
+            "Gold words[] Exhaust.",
+            "Gold words[] [[Exhaust]].");
+    }
+
+    @Test
+    public void nestedColors() {
+        assertText("#y[RED]both[] words here", true, true,
+            "<span class=\"color-y\"><span style=\"color:RED\">both</span></span> words here",
+            "both words here",
+            "[[both]] words here");
+        assertText("[GOLD]#yKeyword[] text", true, true,
+            "<span style=\"color:GOLD\"><span class=\"color-y\">Keyword</span></span> text",
+            "Keyword text",
+            "[[Keyword]] text");
+    }
+
+    @Test
+    public void wikiLinkPunctuation() {
+        // punctuation after a keyword goes outside the link
+        assertSmart("#yLock #yOn and #yWeak, #ySlow; done",
+            "<span class=\"color-y\">Lock</span> <span class=\"color-y\">On</span> and <span class=\"color-y\">Weak,</span> <span class=\"color-y\">Slow;</span> done",
+            "Lock On and Weak, Slow; done",
+            "[[Lock]] [[On]] and [[Weak]], [[Slow]]; done");
+        assertSmart("#yReally?!", "<span class=\"color-y\">Really?!</span>", "Really?!", "[[Really]]?!");
+        // no empty links
+        assertSmart("#y...", "<span class=\"color-y\">...</span>", "...", "...");
+    }
+
+    @Test
+    public void empty() {
+        assertSmart(null, "", "", "");
+        assertSmart("", "", "", "");
+    }
+}
@@ -0,0 +1,71 @@
+package sts_exporter.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class SelectionTest {
+    private static final int[] ITEMS = {7, 3, 9, 1, 4};
+
+    // The items as a view of a buffer, with something in front of them
+    private static Selection selection() {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * (ITEMS.length + 2));
+        buffer.putInt(0, -1).putInt(4, -1);
+        for (int i = 0; i < ITEMS.length; ++i) {
+            buffer.putInt(8 + 4 * i, ITEMS[i]);
+        }
+        return new Selection(buffer, 8, ITEMS.length);
+    }
+
+    @Test
+    public void get() {
+        Selection selection = selection();
+        assertEquals(ITEMS.length, selection.size());
+        assertArrayEquals(ITEMS, selection.toArray());
+        assertEquals(9, selection.get(2));
+    }
+
+    @Test
+    public void page() {
+        Selection selection = selection();
+        assertArrayEquals(new int[]{7, 3}, selection.page(0, 2).toArray());
+        assertArrayEquals(new int[]{9, 1}, selection.page(2, 2).toArray());
+        // pages are clipped to the selection
+        assertArrayEquals(new int[]{1, 4}, selection.page(3, 10).toArray());
+        assertTrue(selection.page(5, 1).isEmpty());
+        assertTrue(selection.page(10, 1).isEmpty());
+        assertTrue(selection.page(1, 0).isEmpty());
+        // a page of a page
+        assertArrayEquals(new int[]{1}, selection.page(1, 4).page(2, 1).toArray());
+    }
+
+    @Test
+    public void empty() {
+        assertTrue(Selection.EMPTY.isEmpty());
+        assertTrue(Selection.EMPTY.page(0, 10).isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutsidePage() {
+        selection().page(1, 2).get(2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getBeforePage() {
+        selection().page(3, 10).get(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeOffset() {
+        selection().page(-1, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeLimit() {
+        selection().page(0, -2);
+    }
+}
@@ -0,0 +1,237 @@
+package sts_exporter.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotReaderTest {
+    private SnapshotReader snapshot;
+
+    // Two mods, with the cards of the second mod in between those of the first one
+    static SnapshotBuilder sample() {
+        SnapshotBuilder builder = new SnapshotBuilder();
+        int base = builder.addMod("slaythespire", "Slay the Spire", "1.0", "MegaCrit", null);
+        int mod = builder.addMod("mymod", "My Mod", "0.1", "Someone, Someone Else", "Adds things");
+        int strike = builder.addCard(base, "Strike_R", "Strike", "Red", "Basic", "Attack", "1", "Deal 6 damage.", -1, 6, -1, "cards/Strike.png", -1);
+        builder.addCard(base, "Strike_R", "Strike+", "Red", "Basic", "Attack", "1", "Deal 9 damage.", -1, 9, -1, "cards/Strike-upgraded.png", strike);
+        builder.addCard(mod, "mymod:Zap", "Zap", "Blue", "Common", "Skill", "0", "Channel 1 Lightning.", -1, -1, 1, "cards/Zap.png", -1);
+        builder.addCard(base, "Bash", "Bash", "Red", "Basic", "Attack", "2", "Deal 8 damage. Apply 2 Vulnerable.", -1, 8, 2, "cards/Bash.png", -1);
+        builder.addCard(mod, "mymod:Über", "Über", "Blue", "Rare", "Power", "X", "Gain [E] «energy».", -1, -1, -1, null, -1);
+        builder.addCard(base, "Defend_R", "Defend", "Red", "Basic", "Skill", "1", "Gain 5 Block.", 5, -1, -1, "cards/Defend.png", -1);
+        builder.addRelic(base, "Burning Blood", "Burning Blood", "Starter", "Red", "RED", "Heal 6 HP.", "Your body's own blood burns.", "relics/Burning Blood.png");
+        builder.addRelic(mod, "mymod:Gem", "Gem", "Rare", "Shared", null, "Gain 1 energy.", null, "relics/Gem.png");
+        builder.addRelic(base, "Anchor", "Anchor", "Common", "Shared", null, "Start with 10 Block.", "Holding this...", "relics/Anchor.png");
+        builder.addPotion(base, "Fire Potion", "Fire Potion", "Common", "Deal 20 damage.", "potions/Fire Potion.png");
+        builder.addPotion(mod, "mymod:Tonic", "Tonic", "Rare", "Heal.", null);
+        builder.addCreature(base, "Cultist", "Cultist", "Normal", 48, 54, "creatures/Cultist.png");
+        builder.addKeyword(base, "Vulnerable", "Takes 50% more damage.", Arrays.asList("vulnerable", "vuln"));
+        builder.addKeyword(mod, "Zapped", "Nothing.", Collections.emptyList());
+        return builder;
+    }
+
+    static ByteBuffer write(SnapshotBuilder builder) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.write(out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        snapshot = new SnapshotReader(write(sample()));
+    }
+
+    @Test
+    public void headerRoundTrips() {
+        assertEquals(SnapshotFormat.VERSION, snapshot.version());
+        assertEquals(2, snapshot.mods().size());
+        assertEquals(6, snapshot.cards().size());
+        assertEquals(3, snapshot.relics().size());
+        assertEquals(2, snapshot.potions().size());
+        assertEquals(1, snapshot.creatures().size());
+        assertEquals(2, snapshot.keywords().size());
+        assertEquals(SnapshotFormat.Card.FIELDS, snapshot.cards().fields());
+    }
+
+    @Test
+    public void modsRoundTrip() {
+        assertEquals("slaythespire", snapshot.modId(0));
+        assertEquals("mymod", snapshot.modId(1));
+        assertNull(snapshot.modId(-1));
+        assertEquals(1, snapshot.findMod("mymod"));
+        assertEquals(-1, snapshot.findMod("othermod"));
+        assertEquals("Someone, Someone Else", snapshot.mods().getString(1, SnapshotFormat.Mod.AUTHORS));
+        assertNull(snapshot.mods().getString(0, SnapshotFormat.Mod.DESCRIPTION));
+    }
+
+    @Test
+    public void cardsRoundTrip() {
+        CardView strike = snapshot.card(0);
+        assertEquals("slaythespire", strike.mod());
+        assertEquals("Strike_R", strike.id());
+        assertEquals("Strike", strike.name());
+        assertEquals("Red", strike.color());
+        assertEquals("Basic", strike.rarity());
+        assertEquals("Attack", strike.type());
+        assertEquals("1", strike.cost());
+        assertEquals("Deal 6 damage.", strike.text());
+        assertEquals(-1, strike.block());
+        assertEquals(6, strike.damage());
+        assertEquals(-1, strike.magicNumber());
+        assertEquals("cards/Strike.png", strike.image());
+        assertFalse(strike.isUpgraded());
+        assertEquals(1, strike.upgrade());
+        assertEquals(-1, strike.base());
+
+        CardView upgraded = snapshot.card(strike.upgrade());
+        assertTrue(upgraded.isUpgraded());
+        assertEquals("Strike+", upgraded.name());
+        assertEquals(9, upgraded.damage());
+        assertEquals(0, upgraded.base());
+        assertEquals(-1, upgraded.upgrade());
+
+        // non-ascii text, and null fields
+        CardView uber = snapshot.card(4);
+        assertEquals("mymod:Über", uber.id());
+        assertEquals("Gain [E] «energy».", uber.text());
+        assertNull(uber.image());
+        assertEquals(-1, uber.upgrade());
+    }
+
+    @Test
+    public void otherItemsRoundTrip() {
+        RelicView gem = snapshot.relic(1);
+        assertEquals("mymod", gem.mod());
+        assertEquals("Gem", gem.name());
+        assertEquals("Rare", gem.tier());
+        assertNull(gem.poolColor());
+        assertNull(gem.flavorText());
+        assertEquals("RED", snapshot.relic(0).poolColor());
+
+        PotionView tonic = snapshot.potion(1);
+        assertEquals("mymod:Tonic", tonic.id());
+        assertEquals("Heal.", tonic.description());
+        assertNull(tonic.image());
+
+        SnapshotReader.Table creatures = snapshot.creatures();
+        assertEquals("Cultist", creatures.getString(0, SnapshotFormat.Creature.NAME));
+        assertEquals(48, creatures.getInt(0, SnapshotFormat.Creature.MIN_HP));
+        assertEquals(54, creatures.getInt(0, SnapshotFormat.Creature.MAX_HP));
+
+        SnapshotReader.Table keywords = snapshot.keywords();
+        SnapshotReader.Table aliases = snapshot.keywordAliases();
+        assertEquals("Vulnerable", keywords.getString(0, SnapshotFormat.Keyword.NAME));
+        int start = keywords.getInt(0, SnapshotFormat.Keyword.ALIASES_START);
+        assertEquals(2, keywords.getInt(0, SnapshotFormat.Keyword.ALIASES_COUNT));
+        assertEquals("vulnerable", aliases.getString(start, SnapshotFormat.KeywordAlias.NAME));
+        assertEquals("vuln", aliases.getString(start + 1, SnapshotFormat.KeywordAlias.NAME));
+        assertEquals(0, keywords.getInt(1, SnapshotFormat.Keyword.ALIASES_COUNT));
+    }
+
+    @Test
+    public void stringsAreShared() {
+        // "Red", "Basic", "Attack", ... are stored once
+        SnapshotReader.Table cards = snapshot.cards();
+        assertEquals(cards.getInt(0, SnapshotFormat.Card.COLOR), cards.getInt(5, SnapshotFormat.Card.COLOR));
+        assertEquals(cards.getInt(0, SnapshotFormat.Card.ID), cards.getInt(1, SnapshotFormat.Card.ID));
+    }
+
+    @Test
+    public void emptySnapshot() throws IOException {
+        SnapshotReader empty = new SnapshotReader(write(new SnapshotBuilder()));
+        assertEquals(0, empty.cards().size());
+        assertEquals(0, empty.stringCount());
+        assertNull(empty.findCard("Strike_R"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        new SnapshotReader(ByteBuffer.wrap("<html></html>".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNewerVersions() throws IOException {
+        ByteBuffer buffer = write(sample());
+        buffer.putInt(4, SnapshotFormat.VERSION + 1);
+        new SnapshotReader(buffer);
+    }
+
+    @Test
+    public void findById() {
+        // the base card, not its upgrade, which has the same id
+        assertEquals(0, snapshot.findCard("Strike_R").record());
+        assertEquals(2, snapshot.findCard("mymod:Zap").record());
+        assertEquals(3, snapshot.findCard("Bash").record());
+        assertEquals(4, snapshot.findCard("mymod:Über").record());
+        assertEquals(5, snapshot.findCard("Defend_R").record());
+        // before, between and after all ids
+        assertNull(snapshot.findCard("A"));
+        assertNull(snapshot.findCard("Strike"));
+        assertNull(snapshot.findCard("zzz"));
+        assertEquals("Anchor", snapshot.findRelic("Anchor").name());
+        assertEquals("Gem", snapshot.findRelic("mymod:Gem").name());
+        assertNull(snapshot.findRelic("Gem"));
+        assertEquals(1, snapshot.findPotion("mymod:Tonic").record());
+        assertNull(snapshot.findPotion("Tonic"));
+    }
+
+    @Test
+    public void findByIdInLargeSnapshot() throws IOException {
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) ids.add("card" + i);
+        Collections.shuffle(ids, new Random(42));
+        SnapshotBuilder builder = new SnapshotBuilder();
+        for (String id : ids) {
+            int base = builder.addCard(-1, id, id, null, null, null, null, null, -1, -1, -1, null, -1);
+            if (id.hashCode() % 3 == 0) builder.addCard(-1, id, id + "+", null, null, null, null, null, -1, -1, -1, null, base);
+        }
+        SnapshotReader large = new SnapshotReader(write(builder));
+        for (String id : ids) {
+            CardView card = large.findCard(id);
+            assertEquals(id, card.id());
+            assertFalse(card.isUpgraded());
+        }
+        assertNull(large.findCard("card"));
+        assertNull(large.findCard("card500"));
+    }
+
+    @Test
+    public void groupIndexLayout() {
+        // number of groups, keys in order of first appearance, start positions relative to the first member, members
+        SnapshotReader.Table index = snapshot.table(SnapshotFormat.CARDS_BY_MOD);
+        int[] expected = {2, 0, 1, 0, 4, 6, 0, 1, 3, 5, 2, 4};
+        assertEquals(expected.length, index.size());
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals("entry " + i, expected[i], index.getInt(i, 0));
+        }
+    }
+
+    @Test
+    public void groups() {
+        assertArrayEquals(new int[]{0, 1, 3, 5}, snapshot.cardsByMod("slaythespire").toArray());
+        assertArrayEquals(new int[]{2, 4}, snapshot.cardsByMod("mymod").toArray());
+        assertTrue(snapshot.cardsByMod("othermod").isEmpty());
+        assertArrayEquals(new int[]{2, 4}, snapshot.cardsByColor("Blue").toArray());
+        assertArrayEquals(new int[]{0, 1, 3, 5}, snapshot.cardsByRarity("Basic").toArray());
+        assertArrayEquals(new int[]{4}, snapshot.cardsByRarity("Rare").toArray());
+        assertTrue(snapshot.cardsByRarity("Special").isEmpty());
+        assertArrayEquals(new int[]{1, 2}, snapshot.relicsByPool("Shared").toArray());
+        assertArrayEquals(new int[]{0, 2}, snapshot.relicsByMod("slaythespire").toArray());
+        assertArrayEquals(new int[]{0}, snapshot.relicsByTier("Starter").toArray());
+        assertArrayEquals(new int[]{1}, snapshot.potionsByMod("mymod").toArray());
+        assertArrayEquals(new int[]{0}, snapshot.potionsByRarity("Common").toArray());
+        assertArrayEquals(new int[]{4}, snapshot.cardsByMod("mymod").page(1, 5).toArray());
+    }
+}